@@ -0,0 +1,31 @@
+-- ----------------------------
+-- 升级已有数据库：tb_voucher_order 增加 (user_id, voucher_id) 唯一索引（一人一单由唯一索引保证）
+-- 新建数据库直接执行 hmdp.sql 即可，不需要执行本脚本
+-- 加索引之前先清理重复的订单：同一个用户同一张券只保留 id 最小的订单，删除的订单占用的库存归还到 tb_seckill_voucher
+-- 建议在停止下单的维护窗口执行；清理和加索引之间如果又写入了重复订单，ALTER TABLE 会失败，重新执行本脚本即可
+-- ----------------------------
+SET NAMES utf8mb4;
+
+START TRANSACTION;
+
+-- 1. 归还重复订单占用的库存
+UPDATE `tb_seckill_voucher` sv
+JOIN (
+    SELECT o.`voucher_id`, COUNT(DISTINCT o.`id`) AS n
+    FROM `tb_voucher_order` o
+    JOIN `tb_voucher_order` k
+      ON k.`user_id` = o.`user_id` AND k.`voucher_id` = o.`voucher_id` AND k.`id` < o.`id`
+    GROUP BY o.`voucher_id`
+) d ON d.`voucher_id` = sv.`voucher_id`
+SET sv.`stock` = sv.`stock` + d.n;
+
+-- 2. 删除重复订单，每个 (user_id, voucher_id) 只保留 id 最小的一条
+DELETE o
+FROM `tb_voucher_order` o
+JOIN `tb_voucher_order` k
+  ON k.`user_id` = o.`user_id` AND k.`voucher_id` = o.`voucher_id` AND k.`id` < o.`id`;
+
+COMMIT;
+
+-- 3. 增加唯一索引（与 hmdp.sql 中的定义一致）
+ALTER TABLE `tb_voucher_order` ADD UNIQUE INDEX `uniqe_key_user_voucher`(`user_id`, `voucher_id`) USING BTREE;
@@ -4,8 +4,11 @@ import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @EnableAspectJAutoProxy(exposeProxy = true)
+// 开启定时任务（库存对账等）
+@EnableScheduling
 // 使用@MapperScan注解扫描指定包下的MyBatis Mapper接口
 @MapperScan("com.hmdp.mapper")
 // 使用@SpringBootApplication注解启用Spring Boot自动配置
@@ -0,0 +1,23 @@
+package com.hmdp.actuator;
+
+import com.hmdp.utils.HotKeyDetector;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Map;
+
+// 暴露当前热点 key 集合：GET /actuator/hotkeys
+@Component
+@Endpoint(id = "hotkeys")
+public class HotKeyEndpoint {
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    @ReadOperation
+    public Map<String, Long> hotKeys() {
+        return hotKeyDetector.getHotKeys();
+    }
+}
@@ -0,0 +1,30 @@
+package com.hmdp.actuator;
+
+import com.hmdp.job.ShopCacheWarmer;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Map;
+
+// 店铺缓存预热：GET /actuator/warmup 查看进度，POST /actuator/warmup 手动触发
+@Component
+@Endpoint(id = "warmup")
+public class WarmupEndpoint {
+
+    @Resource
+    private ShopCacheWarmer shopCacheWarmer;
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return shopCacheWarmer.status();
+    }
+
+    @WriteOperation
+    public Map<String, Object> start() {
+        shopCacheWarmer.start();
+        return shopCacheWarmer.status();
+    }
+}
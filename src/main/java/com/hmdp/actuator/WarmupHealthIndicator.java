@@ -0,0 +1,22 @@
+package com.hmdp.actuator;
+
+import com.hmdp.job.ShopCacheWarmer;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+// 店铺缓存预热状态（health 中的 warmup），加入 readiness 分组：预热完成之前返回 OUT_OF_SERVICE
+@Component
+public class WarmupHealthIndicator implements HealthIndicator {
+
+    @Resource
+    private ShopCacheWarmer shopCacheWarmer;
+
+    @Override
+    public Health health() {
+        Health.Builder builder = shopCacheWarmer.isWarm() ? Health.up() : Health.outOfService();
+        return builder.withDetails(shopCacheWarmer.status()).build();
+    }
+}
@@ -0,0 +1,86 @@
+package com.hmdp.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.CommonErrorHandler;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.ExponentialBackOff;
+
+@Slf4j
+@Configuration
+public class KafkaConfig {
+
+    // 消费失败后的重试：间隔从 500ms 开始翻倍，最多重试 4 次
+    private static final long RETRY_INITIAL_INTERVAL = 500L;
+    private static final double RETRY_MULTIPLIER = 2.0;
+    private static final int RETRY_MAX_ATTEMPTS = 4;
+    // 死信补偿失败后的重试：间隔从 500ms 开始翻倍，最长 30s，不限次数
+    private static final long DLT_RETRY_MAX_INTERVAL = 30000L;
+
+    // 批量消费的监听容器：一次拿到一次 poll 的全部消息，监听方法正常返回后提交整批的 offset。
+    // 抛出异常时由 kafkaErrorHandler 处理：不会无限重新投递，退避重试有限次后交给死信主题并跳过（提交 offset），
+    // 抛出 BatchListenerFailedException 时只有它指出的那一条进入死信主题，之前的 offset 先提交
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> batchListenerContainerFactory(
+            ConsumerFactory<Object, Object> consumerFactory, CommonErrorHandler errorHandler) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setBatchListener(true);
+        factory.setCommonErrorHandler(errorHandler);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        return factory;
+    }
+
+    // 死信主题的监听容器：补偿失败时一直重试（阻塞这个分区），不能再交给死信主题，
+    // 否则会发送到 <topic>.DLT.DLT，没有人消费，库存永远不会归还
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> dltListenerContainerFactory(
+            ConsumerFactory<Object, Object> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setCommonErrorHandler(dltErrorHandler());
+        return factory;
+    }
+
+    private static CommonErrorHandler dltErrorHandler() {
+        ExponentialBackOff backOff = new ExponentialBackOff(RETRY_INITIAL_INTERVAL, RETRY_MULTIPLIER);
+        backOff.setMaxInterval(DLT_RETRY_MAX_INTERVAL);
+        // 不设置最长重试时间，一直重试；不能重试的异常（如消息无法反序列化）直接交给 recoverer，记录日志后跳过，需要人工处理
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler((record, e) -> log.error(
+                "死信订单无法补偿，已跳过，需要人工处理, topic: {}, partition: {}, offset: {}, value: {}",
+                record.topic(), record.partition(), record.offset(), record.value(), e), backOff);
+        errorHandler.setRetryListeners((record, e, attempt) -> log.error(
+                "死信订单补偿失败，第 {} 次重试, topic: {}, partition: {}, offset: {}",
+                attempt, record.topic(), record.partition(), record.offset(), e));
+        return errorHandler;
+    }
+
+    // 消费失败时按指数退避重试，重试用完后发送到死信主题 <topic>.DLT（按 key 分区，不要求分区数一致）
+    // 默认的监听容器（订单主题的监听器）也会使用这个 Bean，死信主题的监听器使用 dltListenerContainerFactory
+    @Bean
+    public CommonErrorHandler kafkaErrorHandler(KafkaTemplate<?, ?> kafkaTemplate) {
+        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(kafkaTemplate,
+                (record, e) -> new TopicPartition(record.topic() + ".DLT", -1));
+        ExponentialBackOff backOff = new ExponentialBackOff(RETRY_INITIAL_INTERVAL, RETRY_MULTIPLIER);
+        backOff.setMaxElapsedTime(maxElapsedTime());
+        return new DefaultErrorHandler(recoverer, backOff);
+    }
+
+    // 重试 RETRY_MAX_ATTEMPTS 次的总等待时间
+    private static long maxElapsedTime() {
+        long elapsed = 0;
+        long interval = RETRY_INITIAL_INTERVAL;
+        for (int i = 0; i < RETRY_MAX_ATTEMPTS; i++) {
+            elapsed += interval;
+            interval = (long) (interval * RETRY_MULTIPLIER);
+        }
+        return elapsed;
+    }
+}
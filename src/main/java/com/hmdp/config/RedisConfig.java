@@ -0,0 +1,42 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodec;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import static com.hmdp.utils.RedisConstants.CACHE_COMPRESS_THRESHOLD;
+
+@Configuration
+public class RedisConfig {
+
+    // Redis pub/sub 的监听容器，用于在多个节点之间广播缓存失效等消息
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    // key 为字符串、value 为原始字节的 RedisTemplate，用于读写二进制编码的缓存
+    @Bean
+    public RedisTemplate<String, byte[]> bytesRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.setHashKeySerializer(RedisSerializer.string());
+        template.setHashValueSerializer(RedisSerializer.byteArray());
+        return template;
+    }
+
+    // 缓存值的编解码器，替换这个 Bean 即可切换编码方式（如 JsonCacheCodec）
+    @Bean
+    public CacheCodec cacheCodec() {
+        return new BinaryCacheCodec(CACHE_COMPRESS_THRESHOLD);
+    }
+}
@@ -78,6 +78,24 @@ public class Voucher implements Serializable {
     @TableField(exist = false)
     private Integer stock;
 
+    /**
+     * 库存租约：每个节点一次从 Redis 预留的库存数，为空时不开启，每次下单都扣减 Redis 中的库存
+     */
+    @TableField(exist = false)
+    private Integer stockLease;
+
+    /**
+     * 秒杀准入限流：整个集群每秒放行的请求数，为空时按剩余库存计算
+     */
+    @TableField(exist = false)
+    private Integer admissionRate;
+
+    /**
+     * 秒杀准入限流：允许的突发请求数，为空时等于 admissionRate
+     */
+    @TableField(exist = false)
+    private Integer admissionBurst;
+
     /**
      * 生效时间
      */
@@ -0,0 +1,110 @@
+package com.hmdp.job;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.utils.SeckillKeys;
+import com.hmdp.utils.SimpleRedisLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 一次性迁移：已下单用户从旧版本的集合（seckill:order:...）改成了 bitmap（seckill:buyers:...），
+ * 启动时把进行中（或刚结束）的秒杀券的旧集合写入 bitmap，并计入已下单用户数，然后删除旧集合。
+ * 新版本不再写旧集合，迁移完成后每次启动只是检查一下旧 key 不存在；多个节点同时启动时只有拿到锁的节点执行。
+ */
+@Slf4j
+@Component
+public class SeckillBuyersMigration implements ApplicationRunner {
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private static final DefaultRedisScript<Long> MIGRATE_SCRIPT;
+    static {
+        MIGRATE_SCRIPT = new DefaultRedisScript<>();
+        MIGRATE_SCRIPT.setLocation(new ClassPathResource("migrate_buyers.lua"));
+        MIGRATE_SCRIPT.setResultType(Long.class);
+    }
+
+    // 每次调用脚本写入的用户数
+    private static final int MIGRATE_BATCH_SIZE = 1000;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        SimpleRedisLock lock = new SimpleRedisLock(SECKILL_BUYERS_MIGRATION_LOCK, stringRedisTemplate);
+        if (!lock.tryLock(SECKILL_RECONCILE_LOCK_TTL)) {
+            return;
+        }
+        try {
+            migrate();
+        } catch (Exception e) {
+            // 迁移失败不影响启动，旧用户可能可以重复下单（数据库唯一索引兜底），下次启动时继续迁移
+            log.error("已下单用户迁移失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void migrate() {
+        LocalDateTime since = LocalDateTime.now().minusDays(SECKILL_RECONCILE_GRACE_DAYS);
+        long lastId = 0;
+        while (true) {
+            // 1. 按 voucher_id 分批读取进行中或刚结束的秒杀券
+            List<SeckillVoucher> vouchers = seckillVoucherService.query()
+                    .gt("voucher_id", lastId)
+                    .ge("end_time", since)
+                    .orderByAsc("voucher_id")
+                    .last("LIMIT " + SECKILL_RECONCILE_BATCH_SIZE)
+                    .list();
+            if (vouchers.isEmpty()) {
+                return;
+            }
+            for (SeckillVoucher voucher : vouchers) {
+                Long voucherId = voucher.getVoucherId();
+                // 2. 带 hash tag 的 key（Redis Cluster 改造之后）和不带 hash tag 的 key（之前）都迁移
+                migrate(voucherId, SECKILL_LEGACY_ORDER_KEY + SeckillKeys.tag(voucherId));
+                migrate(voucherId, SECKILL_LEGACY_ORDER_KEY + voucherId);
+            }
+            lastId = vouchers.get(vouchers.size() - 1).getVoucherId();
+        }
+    }
+
+    private void migrate(Long voucherId, String legacyKey) {
+        Set<String> members = stringRedisTemplate.opsForSet().members(legacyKey);
+        if (members == null || members.isEmpty()) {
+            return;
+        }
+        // 3. 分批写入 bitmap，超出 bitmap 范围的用户 id 跳过
+        String[] userIds = members.stream()
+                .filter(userId -> Long.parseLong(userId) >= 0 && Long.parseLong(userId) <= SECKILL_BUYERS_MAX_USER_ID)
+                .toArray(String[]::new);
+        List<String> keys = Arrays.asList(SeckillKeys.buyersKey(voucherId), SeckillKeys.buyerCountKey(voucherId));
+        long migrated = 0;
+        for (int from = 0; from < userIds.length; from += MIGRATE_BATCH_SIZE) {
+            Object[] batch = Arrays.copyOfRange(userIds, from, Math.min(userIds.length, from + MIGRATE_BATCH_SIZE));
+            Long n = stringRedisTemplate.execute(MIGRATE_SCRIPT, keys, batch);
+            migrated += n == null ? 0 : n;
+        }
+        if (userIds.length < members.size()) {
+            log.warn("用户 id 超出 bitmap 范围，未迁移, voucherId: {}, 用户数: {}", voucherId, members.size() - userIds.length);
+        }
+        // 4. 旧集合已经没有人写入，迁移完删除
+        stringRedisTemplate.delete(legacyKey);
+        log.info("已下单用户迁移完成, voucherId: {}, 旧集合用户数: {}, 新写入 bitmap: {}", voucherId, members.size(), migrated);
+    }
+}
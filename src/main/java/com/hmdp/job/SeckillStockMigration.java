@@ -0,0 +1,90 @@
+package com.hmdp.job;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.utils.SeckillKeys;
+import com.hmdp.utils.SimpleRedisLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 一次性迁移：库存 key 从旧版本的 seckill:stock:voucherId 改成了带 hash tag 的 seckill:stock:{voucherId}，
+ * 启动时把进行中（或刚结束）的秒杀券的旧 key 复制到新 key（新 key 已经存在时以新 key 为准），然后删除旧 key。
+ * 两个 key 在 Redis Cluster 中可能不在同一个 slot，不能用 RENAME，改为读出旧值后 SET NX。
+ * 新版本不再写旧 key，迁移完成后每次启动只是检查一下旧 key 不存在；多个节点同时启动时只有拿到锁的节点执行。
+ * NOTE: 滚动升级期间旧版本的节点还在扣减旧 key，所有节点升级完成之后再重启一次，迁移期间的扣减才会被带过来。
+ */
+@Slf4j
+@Component
+public class SeckillStockMigration implements ApplicationRunner {
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        SimpleRedisLock lock = new SimpleRedisLock(SECKILL_STOCK_MIGRATION_LOCK, stringRedisTemplate);
+        if (!lock.tryLock(SECKILL_RECONCILE_LOCK_TTL)) {
+            return;
+        }
+        try {
+            migrate();
+        } catch (Exception e) {
+            // 迁移失败不影响启动，没有迁移的券在 Redis 中没有库存（按售罄处理），下次启动时继续迁移
+            log.error("秒杀库存 key 迁移失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void migrate() {
+        LocalDateTime since = LocalDateTime.now().minusDays(SECKILL_RECONCILE_GRACE_DAYS);
+        long lastId = 0;
+        while (true) {
+            // 1. 按 voucher_id 分批读取进行中或刚结束的秒杀券
+            List<SeckillVoucher> vouchers = seckillVoucherService.query()
+                    .gt("voucher_id", lastId)
+                    .ge("end_time", since)
+                    .orderByAsc("voucher_id")
+                    .last("LIMIT " + SECKILL_RECONCILE_BATCH_SIZE)
+                    .list();
+            if (vouchers.isEmpty()) {
+                return;
+            }
+            for (SeckillVoucher voucher : vouchers) {
+                migrate(voucher.getVoucherId());
+            }
+            lastId = vouchers.get(vouchers.size() - 1).getVoucherId();
+        }
+    }
+
+    private void migrate(Long voucherId) {
+        String legacyKey = SECKILL_STOCK_KEY + voucherId;
+        String stock = stringRedisTemplate.opsForValue().get(legacyKey);
+        if (stock == null) {
+            return;
+        }
+        // 2. 新 key 不存在时写入旧值；已经存在说明新版本已经写过（如重新发布了券），以新 key 为准
+        String stockKey = SeckillKeys.stockKey(voucherId);
+        Boolean copied = stringRedisTemplate.opsForValue().setIfAbsent(stockKey, stock);
+        // 3. 旧 key 已经没有人读取，迁移完删除
+        stringRedisTemplate.delete(legacyKey);
+        if (Boolean.TRUE.equals(copied)) {
+            log.info("秒杀库存 key 迁移完成, voucherId: {}, 库存: {}", voucherId, stock);
+        } else {
+            log.warn("新的库存 key 已经存在，丢弃旧 key, voucherId: {}, 旧库存: {}, 新库存: {}",
+                    voucherId, stock, stringRedisTemplate.opsForValue().get(stockKey));
+        }
+    }
+}
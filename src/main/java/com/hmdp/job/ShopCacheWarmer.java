@@ -0,0 +1,184 @@
+package com.hmdp.job;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.service.IShopService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.SimpleRedisLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 店铺缓存预热：按 id 分批（keyset 分页）读取 tb_shop，通过 pipeline 写入逻辑过期缓存和 GEO 索引。
+ * 应用启动时自动执行一次，也可以通过 POST /actuator/warmup 手动触发；
+ * 只写入 Redis 中还没有的店铺缓存，不覆盖已有的值。多个节点同时启动时只有拿到锁的节点预热，
+ * 最近已经预热过（有预热完成标记）时启动不再预热；
+ * 第一次预热结束之前以及执行期间，readiness 分组中的 warmup 健康检查为 OUT_OF_SERVICE（见 WarmupHealthIndicator）。
+ * NOTE: 不能在这里发布 REFUSING_TRAFFIC，所有 ApplicationRunner 返回后 Spring Boot 会发布 ACCEPTING_TRAFFIC 覆盖掉。
+ */
+@Slf4j
+@Component
+public class ShopCacheWarmer implements ApplicationRunner {
+
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "shop-cache-warmer"));
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // 预热进度
+    private volatile String state = "IDLE";
+    private volatile long total;
+    private volatile long processed;
+    private volatile long written;
+    private volatile long startTime;
+    private volatile long endTime;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        start(false);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 手动触发预热，不检查预热完成标记，已经在预热中则返回 false
+     */
+    public boolean start() {
+        return start(true);
+    }
+
+    /**
+     * 异步开始预热，已经在预热中则返回 false
+     *
+     * @param force 为 false 时，最近已经预热过则跳过
+     */
+    public boolean start(boolean force) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        state = "RUNNING";
+        executor.submit(() -> {
+            // 锁和预热在同一个线程中获取、释放
+            SimpleRedisLock lock = new SimpleRedisLock(WARMUP_SHOP_LOCK, stringRedisTemplate);
+            boolean locked = false;
+            try {
+                // 1. 已经预热过，或者其他节点正在预热，跳过（没有写入的店铺在查询时回填）
+                if (!force && Boolean.TRUE.equals(stringRedisTemplate.hasKey(WARMUP_SHOP_DONE_KEY))) {
+                    state = "SKIPPED";
+                    log.info("店铺缓存最近已经预热过，跳过");
+                    return;
+                }
+                locked = lock.tryLock(WARMUP_SHOP_LOCK_TTL);
+                if (!locked) {
+                    state = "SKIPPED";
+                    log.info("其他节点正在预热店铺缓存，跳过");
+                    return;
+                }
+                // 2. 预热，完成后写入标记
+                warmUp();
+                stringRedisTemplate.opsForValue().set(WARMUP_SHOP_DONE_KEY, String.valueOf(System.currentTimeMillis()),
+                        WARMUP_SHOP_DONE_TTL, TimeUnit.SECONDS);
+                state = "DONE";
+            } catch (Exception e) {
+                state = "FAILED";
+                log.error("店铺缓存预热失败", e);
+            } finally {
+                if (locked) {
+                    lock.unlock();
+                }
+                endTime = System.currentTimeMillis();
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 预热是否已经结束（预热失败也算结束，不能一直不接收流量），执行期间返回 false
+     */
+    public boolean isWarm() {
+        return !running.get() && endTime > 0;
+    }
+
+    public Map<String, Object> status() {
+        long end = running.get() ? System.currentTimeMillis() : endTime;
+        long elapsed = Math.max(1, end - startTime);
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", state);
+        status.put("total", total);
+        status.put("processed", processed);
+        status.put("written", written);
+        status.put("elapsedMillis", startTime == 0 ? 0 : elapsed);
+        status.put("shopsPerSecond", startTime == 0 ? 0 : processed * 1000 / elapsed);
+        return status;
+    }
+
+    private void warmUp() {
+        state = "RUNNING";
+        startTime = System.currentTimeMillis();
+        processed = 0;
+        written = 0;
+        total = shopService.count();
+        log.info("开始预热店铺缓存，共 {} 个店铺", total);
+
+        // 按 id 做 keyset 分页，避免 LIMIT offset 越翻越慢
+        long lastId = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Shop> shops = shopService.query()
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + WARMUP_BATCH_SIZE)
+                    .list();
+            if (shops.isEmpty()) {
+                break;
+            }
+            writeBatch(shops);
+            lastId = shops.get(shops.size() - 1).getId();
+            processed += shops.size();
+            log.info("店铺缓存预热进度: {}/{}, {} shops/s", processed, total, status().get("shopsPerSecond"));
+        }
+        log.info("店铺缓存预热完成: {}", status());
+    }
+
+    private void writeBatch(List<Shop> shops) {
+        // 1. 逻辑过期缓存，一次 pipeline 写入，已有的 key 不覆盖
+        Map<String, Shop> values = new HashMap<>(shops.size());
+        shops.forEach(shop -> values.put(CACHE_SHOP_KEY + shop.getId(), shop));
+        written += cacheClient.setAllIfAbsentWithLogicalExpire(values, CACHE_SHOP_TTL, TimeUnit.SECONDS);
+
+        // 2. GEO 索引，一次 pipeline 写入
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Shop shop : shops) {
+                conn.geoAdd(SHOP_GEO_KEY + shop.getTypeId(), new Point(shop.getX(), shop.getY()), shop.getId().toString());
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,320 @@
+package com.hmdp.job;
+
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.queue.OrderQueue;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillKeys;
+import com.hmdp.utils.SeckillStockLease;
+import com.hmdp.utils.SimpleRedisLock;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * Redis 与 MySQL 的秒杀库存对账。对每张进行中（或刚结束）的秒杀券检查：
+ * Redis 剩余库存 + 各节点租约中未卖出的库存 + Redis 已下单用户数 == 数据库剩余库存 + 数据库订单数，
+ * 不一致时记录到 seckill:reconcile；Redis 中下了单、数据库中却没有的订单（消费时被丢掉），
+ * 同一个用户连续两次对账都缺失、下单超过 SECKILL_RECONCILE_REPLAY_MIN_AGE 时，用原来的订单 id 重新放入订单队列补单
+ * （缺失可能只是还没被消费）；订单队列积压较多（或无法获取积压量）时不补单，补发过的订单一段时间内不重复补发。
+ * 宕机节点留下的到期租约在这里回收。按 voucher_id 分批处理，每批只有一次数据库分组查询和两次 Redis pipeline。
+ * 每个节点都会调度，拿到 Redis 锁的节点才执行，上一次缺失的用户也记录在 Redis 中，换了节点执行也能比较。
+ */
+@Slf4j
+@Component
+public class StockReconciler {
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private OrderQueue orderQueue;
+    @Resource
+    private RedisIdWorker redisIdWorker;
+    @Resource
+    private SeckillStockLease seckillStockLease;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Scheduled(fixedDelay = SECKILL_RECONCILE_INTERVAL, initialDelay = SECKILL_RECONCILE_INTERVAL)
+    public void reconcile() {
+        // 多个节点同时对账会重复补单，只有拿到锁的节点执行
+        SimpleRedisLock lock = new SimpleRedisLock(SECKILL_RECONCILE_LOCK, stringRedisTemplate);
+        if (!lock.tryLock(SECKILL_RECONCILE_LOCK_TTL)) {
+            return;
+        }
+        try {
+            reconcileAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reconcileAll() {
+        LocalDateTime since = LocalDateTime.now().minusDays(SECKILL_RECONCILE_GRACE_DAYS);
+        // 订单队列积压时，缺失的订单可能还在队列中，本次只对账不补单
+        long lag = orderQueue.lag();
+        boolean replay = lag >= 0 && lag <= SECKILL_RECONCILE_REPLAY_MAX_LAG;
+        if (!replay) {
+            log.warn("订单队列积压 {} 条（-1 为无法获取），本次对账不补单", lag);
+        }
+        long lastId = 0;
+        int total = 0;
+        while (true) {
+            // 1. 按 voucher_id 分批读取进行中或刚结束的秒杀券
+            List<SeckillVoucher> vouchers = seckillVoucherService.query()
+                    .gt("voucher_id", lastId)
+                    .ge("end_time", since)
+                    .orderByAsc("voucher_id")
+                    .last("LIMIT " + SECKILL_RECONCILE_BATCH_SIZE)
+                    .list();
+            if (vouchers.isEmpty()) {
+                break;
+            }
+            try {
+                reconcileBatch(vouchers, replay);
+            } catch (Exception e) {
+                log.error("库存对账失败, voucherId > {}", lastId, e);
+            }
+            lastId = vouchers.get(vouchers.size() - 1).getVoucherId();
+            total += vouchers.size();
+        }
+        log.debug("库存对账完成，共 {} 张秒杀券", total);
+    }
+
+    private void reconcileBatch(List<SeckillVoucher> vouchers, boolean replay) {
+        List<Long> voucherIds = vouchers.stream().map(SeckillVoucher::getVoucherId).collect(Collectors.toList());
+
+        // 2. Redis：剩余库存、已下单用户数和租约记录
+        Map<Long, Long> redisStock = redisStock(voucherIds);
+        List<Object> orderCounts = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            voucherIds.forEach(id -> {
+                conn.get(SeckillKeys.buyerCountKey(id));
+                conn.hGetAll(SeckillKeys.leaseKey(id));
+            });
+            return null;
+        });
+
+        // 3. 数据库：每张券的订单数，一次分组查询
+        Map<Long, Long> dbOrders = new HashMap<>();
+        voucherOrderService.listMaps(new QueryWrapper<VoucherOrder>()
+                        .select("voucher_id AS voucherId", "COUNT(*) AS cnt")
+                        .in("voucher_id", voucherIds)
+                        .groupBy("voucher_id"))
+                .forEach(row -> dbOrders.put(((Number) row.get("voucherId")).longValue(), ((Number) row.get("cnt")).longValue()));
+
+        // 4. 逐张比较，没有缺失订单的券清掉上一次缺失的用户
+        List<String> settled = new ArrayList<>();
+        for (int i = 0; i < vouchers.size(); i++) {
+            SeckillVoucher voucher = vouchers.get(i);
+            Long voucherId = voucher.getVoucherId();
+            Long stockInRedis = redisStock.get(voucherId);
+            if (stockInRedis == null) {
+                // Redis 中没有这张券（未预热或已清理），无法对账
+                continue;
+            }
+            long ordersInRedis = orderCounts.get(2 * i) == null ? 0 : Long.parseLong(orderCounts.get(2 * i).toString());
+            @SuppressWarnings("unchecked")
+            long leased = leasedStock(voucherId, (Map<String, String>) orderCounts.get(2 * i + 1));
+            long ordersInDb = dbOrders.getOrDefault(voucherId, 0L);
+            long redisTotal = stockInRedis + leased + ordersInRedis;
+            long dbTotal = voucher.getStock() + ordersInDb;
+            // Redis 中的订单比数据库多：可能还在订单队列中没被消费，同一个用户连续两次对账都缺失才算丢单
+            long gap = ordersInRedis - ordersInDb;
+            Map<Long, Long> lost = gap > 0 ? lostOrders(voucherId) : Collections.emptyMap();
+            if (gap <= 0) {
+                settled.add(SeckillKeys.reconcileMissingKey(voucherId));
+            }
+            if (redisTotal == dbTotal && lost.isEmpty()) {
+                if (gap <= 0) {
+                    stringRedisTemplate.opsForHash().delete(SECKILL_RECONCILE_KEY, voucherId.toString());
+                }
+                continue;
+            }
+
+            // 5. 记录不一致
+            Map<String, Object> record = new LinkedHashMap<>();
+            record.put("redisStock", stockInRedis);
+            record.put("redisLeased", leased);
+            record.put("redisOrders", ordersInRedis);
+            record.put("dbStock", voucher.getStock());
+            record.put("dbOrders", ordersInDb);
+            record.put("time", LocalDateTime.now().toString());
+            stringRedisTemplate.opsForHash().put(SECKILL_RECONCILE_KEY, voucherId.toString(), JSONUtil.toJsonStr(record));
+            meterRegistry.counter("seckill.reconcile.discrepancies").increment();
+            log.warn("秒杀库存不一致, voucherId: {}, {}", voucherId, record);
+
+            // 6. 用原来的订单 id 补发丢失的订单
+            if (!lost.isEmpty() && replay) {
+                replayLostOrders(voucherId, lost);
+            }
+        }
+        if (!settled.isEmpty()) {
+            stringRedisTemplate.delete(settled);
+        }
+    }
+
+    // 各节点租约中还没有卖出的库存之和（回收之前的数量，与之前读到的库存对应），
+    // 顺便回收到期超过宽限时间的租约（节点已经宕机），回收的库存回到库存 key 中
+    private long leasedStock(Long voucherId, Map<String, String> leases) {
+        if (leases == null || leases.isEmpty()) {
+            return 0;
+        }
+        long reclaimAfter = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(SECKILL_LEASE_RECLAIM_GRACE);
+        long leased = 0;
+        for (Map.Entry<String, String> entry : leases.entrySet()) {
+            String node = entry.getKey();
+            if (node.endsWith(":expire")) {
+                continue;
+            }
+            long amount = Long.parseLong(entry.getValue());
+            String expire = leases.get(node + ":expire");
+            if (expire != null && Long.parseLong(expire) < reclaimAfter) {
+                // 以脚本中 Redis 的时间为准，返回实际归还的数量
+                long reclaimed = seckillStockLease.reclaim(voucherId, node);
+                if (reclaimed > 0) {
+                    log.warn("回收到期的库存租约, voucherId: {}, node: {}, 数量: {}", voucherId, node, reclaimed);
+                    meterRegistry.counter("seckill.lease.reclaimed").increment(reclaimed);
+                }
+            }
+            leased += Math.max(0, amount);
+        }
+        return leased;
+    }
+
+    // 剩余库存，Redis 中没有库存 key 的券不返回
+    private Map<Long, Long> redisStock(List<Long> voucherIds) {
+        List<String> values = stringRedisTemplate.opsForValue()
+                .multiGet(voucherIds.stream().map(SeckillKeys::stockKey).collect(Collectors.toList()));
+        Map<Long, Long> stock = new HashMap<>();
+        for (int i = 0; i < voucherIds.size(); i++) {
+            String value = values == null ? null : values.get(i);
+            if (value != null) {
+                stock.put(voucherIds.get(i), Long.parseLong(value));
+            }
+        }
+        return stock;
+    }
+
+    /**
+     * 找出丢失的订单：还没有落库的订单中，数据库里没有、上一次对账时也缺失、下单时间足够早、最近没有补发过的用户，
+     * 返回 userId -> 原来的订单 id。本次缺失的用户记录下来，留给下一次对账比较；已经落库的用户从还没有落库的订单中删除
+     */
+    private Map<Long, Long> lostOrders(Long voucherId) {
+        // 1. 还没有落库的订单，userId -> 订单 id，下单时间太近的用户记下来
+        Map<Long, Long> pending = new HashMap<>();
+        Set<Long> recent = new HashSet<>();
+        long minAgeEpochSecond = System.currentTimeMillis() / 1000 - SECKILL_RECONCILE_REPLAY_MIN_AGE;
+        stringRedisTemplate.<String, String>opsForHash().entries(SeckillKeys.pendingKey(voucherId)).forEach((userId, value) -> {
+            int idx = value.indexOf(':');
+            long epochSecond = Long.parseLong(value.substring(0, idx));
+            LocalDateTime time = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+            pending.put(Long.valueOf(userId), redisIdWorker.toId(time, Long.parseLong(value.substring(idx + 1))));
+            if (epochSecond > minAgeEpochSecond) {
+                recent.add(Long.valueOf(userId));
+            }
+        });
+        // 2. 去掉数据库中已经有订单的用户（落库后没能删掉的记录顺便清理）
+        if (!pending.isEmpty()) {
+            List<String> persisted = voucherOrderService.query()
+                    .select("user_id")
+                    .eq("voucher_id", voucherId)
+                    .in("user_id", pending.keySet())
+                    .list()
+                    .stream()
+                    .map(o -> o.getUserId().toString())
+                    .collect(Collectors.toList());
+            if (!persisted.isEmpty()) {
+                persisted.forEach(userId -> pending.remove(Long.valueOf(userId)));
+                stringRedisTemplate.opsForHash().delete(SeckillKeys.pendingKey(voucherId), persisted.toArray());
+            }
+        }
+        // 3. 与上一次缺失的用户比较，并把本次缺失的用户记录下来
+        String missingKey = SeckillKeys.reconcileMissingKey(voucherId);
+        Set<String> lastMissing = stringRedisTemplate.opsForSet().members(missingKey);
+        stringRedisTemplate.delete(missingKey);
+        if (!pending.isEmpty()) {
+            stringRedisTemplate.opsForSet().add(missingKey, pending.keySet().stream().map(String::valueOf).toArray(String[]::new));
+            stringRedisTemplate.expire(missingKey, 3 * SECKILL_RECONCILE_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+        if (lastMissing == null || lastMissing.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        pending.keySet().removeIf(userId -> !lastMissing.contains(userId.toString()));
+        // 4. 去掉下单时间太近（可能还在订单队列中）和最近补发过的订单
+        pending.keySet().removeAll(recent);
+        if (!pending.isEmpty()) {
+            long replayedAfter = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(SECKILL_RECONCILE_REPLAY_MIN_AGE);
+            stringRedisTemplate.<String, String>opsForHash().entries(SeckillKeys.reconcileReplayedKey(voucherId))
+                    .forEach((userId, replayedAt) -> {
+                        if (Long.parseLong(replayedAt) > replayedAfter) {
+                            pending.remove(Long.valueOf(userId));
+                        }
+                    });
+        }
+        return pending;
+    }
+
+    // 用原来的订单 id 重新发送订单消息，落库是幂等的，原来的消息后来又被消费也不会重复下单。
+    // 在对账线程中等待发送结果（回调可能在 Redis 的 IO 线程中执行，不能在回调里访问 Redis），
+    // 发送成功的订单记录补发时间，发送失败的留给下一次对账
+    private void replayLostOrders(Long voucherId, Map<Long, Long> lost) {
+        Map<Long, CompletableFuture<Void>> sent = new HashMap<>(lost.size());
+        lost.forEach((userId, orderId) -> {
+            VoucherOrder order = new VoucherOrder();
+            order.setId(orderId);
+            order.setUserId(userId);
+            order.setVoucherId(voucherId);
+            sent.put(userId, orderQueue.send(order));
+        });
+        try {
+            CompletableFuture.allOf(sent.values().toArray(new CompletableFuture[0]))
+                    .get(SECKILL_RECONCILE_REPLAY_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // 逐个检查结果
+        }
+        String now = String.valueOf(System.currentTimeMillis());
+        Map<String, String> replayed = new HashMap<>();
+        sent.forEach((userId, future) -> {
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                replayed.put(userId.toString(), now);
+            }
+        });
+        if (!replayed.isEmpty()) {
+            String replayedKey = SeckillKeys.reconcileReplayedKey(voucherId);
+            stringRedisTemplate.opsForHash().putAll(replayedKey, replayed);
+            stringRedisTemplate.expire(replayedKey, 2 * SECKILL_RECONCILE_REPLAY_MIN_AGE, TimeUnit.SECONDS);
+            meterRegistry.counter("seckill.reconcile.replayed").increment(replayed.size());
+        }
+        int failed = lost.size() - replayed.size();
+        if (failed > 0) {
+            meterRegistry.counter("seckill.reconcile.replay.failed").increment(failed);
+            log.error("补发丢失的订单失败（或超时），留给下一次对账, voucherId: {}, 失败数: {}", voucherId, failed);
+        }
+        log.warn("补发丢失的订单, voucherId: {}, 订单数: {}, 成功: {}", voucherId, lost.size(), replayed.size());
+    }
+}
@@ -0,0 +1,46 @@
+package com.hmdp.kafka;
+
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+// 批量消费订单消息，seckill.order.batch-consumer=false 时改用逐条消费的 VoucherOrderConsumer
+// 只在订单队列为 kafka（默认）时启用
+@Component
+@Slf4j
+@ConditionalOnExpression("'${seckill.order.queue:kafka}' == 'kafka' and ${seckill.order.batch-consumer:true}")
+public class VoucherOrderBatchConsumer {
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @KafkaListener(topics = "voucher-orders", groupId = "voucher-order-group",
+            containerFactory = "batchListenerContainerFactory")
+    public void handleVoucherOrders(List<VoucherOrder> voucherOrders) {
+        // 1. 整批在一个事务里落库
+        try {
+            voucherOrderService.createVoucherOrders(voucherOrders);
+            log.debug("批量创建订单完成, 本批消息数: {}", voucherOrders.size());
+            return;
+        } catch (Exception e) {
+            log.warn("批量创建订单失败，改为逐条处理, 本批消息数: {}", voucherOrders.size(), e);
+        }
+        // 2. 整批失败时逐条落库（createVoucherOrder 是幂等的），找出真正失败的那一条
+        // NOTE: 抛出 BatchListenerFailedException 时，kafkaErrorHandler 会提交它之前的 offset，
+        // 只对这一条退避重试，重试用完后只有这一条进入死信主题，后面的消息重新投递，不会被一起补偿
+        for (int i = 0; i < voucherOrders.size(); i++) {
+            try {
+                voucherOrderService.createVoucherOrder(voucherOrders.get(i));
+            } catch (Exception e) {
+                throw new BatchListenerFailedException("创建订单失败, orderId: " + voucherOrders.get(i).getId(), e, i);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.hmdp.kafka;
+
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+// 重试用完仍然失败的订单进入死信主题，在这里补偿：归还 Redis 库存，让这个库存可以重新被抢
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "seckill.order.queue", havingValue = "kafka", matchIfMissing = true)
+public class VoucherOrderDltConsumer {
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    // 补偿失败时一直重试，不会再进入死信主题（见 KafkaConfig#dltListenerContainerFactory）
+    @KafkaListener(topics = "voucher-orders.DLT", groupId = "voucher-order-compensation",
+            containerFactory = "dltListenerContainerFactory")
+    public void handleDeadOrder(VoucherOrder voucherOrder) {
+        log.error("订单最终处理失败, orderId: {}, userId: {}, voucherId: {}",
+                voucherOrder.getId(), voucherOrder.getUserId(), voucherOrder.getVoucherId());
+        voucherOrderService.compensateOrder(voucherOrder);
+    }
+}
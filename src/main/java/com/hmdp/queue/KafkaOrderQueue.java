@@ -0,0 +1,91 @@
+package com.hmdp.queue;
+
+import com.hmdp.entity.VoucherOrder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 基于 Kafka 的订单队列，由 kafka 包中的消费者落库
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "seckill.order.queue", havingValue = "kafka", matchIfMissing = true)
+public class KafkaOrderQueue implements OrderQueue {
+
+    private static final String TOPIC = "voucher-orders";
+    private static final String GROUP = "voucher-order-group";
+    // 查询消费延迟的超时时间（毫秒）
+    private static final long ADMIN_TIMEOUT = 5000L;
+
+    @Resource
+    private KafkaTemplate<String, Object> kafkaTemplate;
+    @Resource
+    private KafkaAdmin kafkaAdmin;
+
+    private AdminClient adminClient;
+
+    @PostConstruct
+    private void init() {
+        adminClient = AdminClient.create(kafkaAdmin.getConfigurationProperties());
+    }
+
+    @PreDestroy
+    private void destroy() {
+        adminClient.close(Duration.ofMillis(ADMIN_TIMEOUT));
+    }
+
+    @Override
+    public CompletableFuture<Void> send(VoucherOrder order) {
+        // 以 userId 作为 key，同一个用户的订单落在同一个分区，按顺序被同一个消费者处理
+        return kafkaTemplate.send(TOPIC, order.getUserId().toString(), order)
+                .completable()
+                .thenApply(r -> null);
+    }
+
+    // 各分区最新的 offset 减去消费者组已提交的 offset 之和，没有提交过 offset 的分区从 0 算起
+    @Override
+    public long lag() {
+        try {
+            Map<TopicPartition, OffsetSpec> partitions = adminClient.describeTopics(Collections.singletonList(TOPIC))
+                    .allTopicNames().get(ADMIN_TIMEOUT, TimeUnit.MILLISECONDS)
+                    .get(TOPIC).partitions().stream()
+                    .map(p -> new TopicPartition(TOPIC, p.partition()))
+                    .collect(Collectors.toMap(Function.identity(), p -> OffsetSpec.latest()));
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> latest = adminClient.listOffsets(partitions)
+                    .all().get(ADMIN_TIMEOUT, TimeUnit.MILLISECONDS);
+            Map<TopicPartition, OffsetAndMetadata> committed = adminClient.listConsumerGroupOffsets(GROUP)
+                    .partitionsToOffsetAndMetadata().get(ADMIN_TIMEOUT, TimeUnit.MILLISECONDS);
+            long lag = 0;
+            for (Map.Entry<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> entry : latest.entrySet()) {
+                OffsetAndMetadata offset = committed.get(entry.getKey());
+                lag += Math.max(0, entry.getValue().offset() - (offset == null ? 0 : offset.offset()));
+            }
+            return lag;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            log.warn("查询订单消费延迟失败", e);
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.hmdp.queue;
+
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * Redis Stream 和内存队列共用的订单落库逻辑，与 Kafka 消费者的错误处理保持一致：
+ * 整批落库失败时按指数退避重试，重试用完后逐条落库，仍然失败的订单补偿（归还库存，标记为失败）。
+ */
+@Slf4j
+@Component
+public class OrderBatchHandler {
+
+    // 订单服务依赖订单队列，延迟注入避免循环依赖
+    @Resource
+    @Lazy
+    private IVoucherOrderService voucherOrderService;
+
+    public void handle(List<VoucherOrder> orders) {
+        // 1. 整批落库，失败时退避重试
+        long interval = SECKILL_ORDER_RETRY_INTERVAL;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                voucherOrderService.createVoucherOrders(orders);
+                return;
+            } catch (Exception e) {
+                if (attempt >= SECKILL_ORDER_MAX_RETRIES || !sleep(interval)) {
+                    log.error("批量创建订单失败，改为逐条处理, 本批订单数: {}", orders.size(), e);
+                    break;
+                }
+                log.warn("批量创建订单失败，{} ms 后重试", interval, e);
+                interval *= 2;
+            }
+        }
+        // 2. 逐条落库，找出失败的订单进行补偿
+        for (VoucherOrder order : orders) {
+            try {
+                voucherOrderService.createVoucherOrder(order);
+            } catch (Exception e) {
+                log.error("订单最终处理失败, orderId: {}, userId: {}, voucherId: {}",
+                        order.getId(), order.getUserId(), order.getVoucherId(), e);
+                voucherOrderService.compensateOrder(order);
+            }
+        }
+    }
+
+    // 被中断（应用关闭）时返回 false，不再等待重试
+    private static boolean sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.hmdp.queue;
+
+import com.hmdp.entity.VoucherOrder;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 秒杀订单队列：秒杀脚本扣减库存成功后，订单经由队列异步落库。
+ * 通过 seckill.order.queue 选择实现：kafka（默认）、redis-stream、memory。
+ */
+public interface OrderQueue {
+
+    /**
+     * 投递订单，订单被队列接收后 future 完成，投递失败时异常完成（调用方负责归还库存）
+     */
+    CompletableFuture<Void> send(VoucherOrder order);
+
+    /**
+     * 秒杀脚本可以直接写入的 Redis Stream key。不为 null 时，非集群模式下由脚本在扣减库存的同一次调用中写入订单，
+     * 不再调用 {@link #send}
+     */
+    default String streamKey() {
+        return null;
+    }
+
+    /**
+     * 队列中还没有被消费的订单数（消费延迟），无法获取时返回 -1。可能有网络 IO，不要在请求线程上调用
+     */
+    long lag();
+}
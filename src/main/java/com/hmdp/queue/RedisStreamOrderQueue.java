@@ -0,0 +1,216 @@
+package com.hmdp.queue;
+
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.utils.RedisIdWorker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 基于 Redis Stream 的订单队列。非集群模式下订单由 seckill.lua 在扣减库存的同一次调用中 XADD，
+ * 字段为 userId、voucherId、timestamp、seq（订单 id 由 timestamp 和 seq 拼出）；
+ * 集群模式下 stream key 和券的 key 不在同一个 slot，由 {@link #send} 单独 XADD，字段为 userId、voucherId、id。
+ * <p>
+ * 每个节点一个消费线程，消费者名为"主机名-随机 id"（同一台主机上的多个实例、重启前后的实例都不同名），
+ * 按批 XREADGROUP，落库后 XACK 并 XDEL。
+ * 其他消费者未确认超过 SECKILL_ORDER_CLAIM_IDLE 的订单（如节点下线、重启之前没有处理完的订单）由本节点 XCLAIM 认领后重新处理，
+ * 因此不会丢单；已经没有未确认订单的旧消费者从消费者组中删除。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "seckill.order.queue", havingValue = "redis-stream")
+public class RedisStreamOrderQueue implements OrderQueue {
+
+    // 没有新订单时 XREADGROUP 阻塞的时间
+    private static final Duration BLOCK_TIMEOUT = Duration.ofSeconds(2);
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+    @Resource
+    private RedisIdWorker redisIdWorker;
+    @Resource
+    private OrderBatchHandler orderBatchHandler;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "order-stream-consumer"));
+    private volatile boolean running = true;
+    private Consumer consumer;
+    private long lastClaimTime;
+
+    @Override
+    public String streamKey() {
+        return SECKILL_ORDER_STREAM_KEY;
+    }
+
+    @Override
+    public CompletableFuture<Void> send(VoucherOrder order) {
+        Map<String, String> fields = new HashMap<>(4);
+        fields.put("id", order.getId().toString());
+        fields.put("userId", order.getUserId().toString());
+        fields.put("voucherId", order.getVoucherId().toString());
+        return reactiveStringRedisTemplate.opsForStream()
+                .add(SECKILL_ORDER_STREAM_KEY, fields)
+                .toFuture()
+                .thenApply(r -> null);
+    }
+
+    // 处理完的订单会 XDEL，Stream 的长度就是还没有确认的订单数
+    @Override
+    public long lag() {
+        Long size = stringRedisTemplate.opsForStream().size(SECKILL_ORDER_STREAM_KEY);
+        return size == null ? -1 : size;
+    }
+
+    @PostConstruct
+    private void init() throws UnknownHostException {
+        consumer = Consumer.from(SECKILL_ORDER_STREAM_GROUP,
+                InetAddress.getLocalHost().getHostName() + "-" + UUID.randomUUID().toString().substring(0, 8));
+        // 创建消费者组（Stream 不存在时一并创建），已经存在时忽略
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands().xGroupCreate(
+                    SECKILL_ORDER_STREAM_KEY.getBytes(StandardCharsets.UTF_8), SECKILL_ORDER_STREAM_GROUP,
+                    ReadOffset.from("0"), true));
+        } catch (DataAccessException e) {
+            if (!String.valueOf(e.getMostSpecificCause().getMessage()).contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+        executor.submit(this::consume);
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        running = false;
+        executor.shutdown();
+        // 等待正在处理的一批订单落库，未确认的订单留在 pending list 中，下次启动时处理
+        if (!executor.awaitTermination(SECKILL_ORDER_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void consume() {
+        // 先读取 pending list 中未确认的订单，读完之后再读取新订单
+        ReadOffset offset = ReadOffset.from("0");
+        while (running) {
+            try {
+                // 定期认领其他消费者长时间未确认的订单，认领之后在自己的 pending list 中
+                if (System.currentTimeMillis() - lastClaimTime > SECKILL_ORDER_CLAIM_INTERVAL) {
+                    lastClaimTime = System.currentTimeMillis();
+                    if (claimIdle() > 0) {
+                        offset = ReadOffset.from("0");
+                    }
+                }
+                List<StringRecord> records = read(offset);
+                if (records == null || records.isEmpty()) {
+                    offset = ReadOffset.lastConsumed();
+                    continue;
+                }
+                // 1. 落库（失败的订单在里面补偿）
+                orderBatchHandler.handle(records.stream().map(this::toOrder).collect(Collectors.toList()));
+                // 2. 确认并删除已处理的消息
+                RecordId[] ids = records.stream().map(StringRecord::getId).toArray(RecordId[]::new);
+                stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_STREAM_GROUP, ids);
+                stringRedisTemplate.opsForStream().delete(SECKILL_ORDER_STREAM_KEY, ids);
+            } catch (Exception e) {
+                if (!running) {
+                    break;
+                }
+                log.error("处理订单 Stream 失败", e);
+                // 未确认的订单还在 pending list 中，回到 pending list 重新处理（落库是幂等的）
+                offset = ReadOffset.from("0");
+                try {
+                    TimeUnit.MILLISECONDS.sleep(SECKILL_ORDER_RETRY_INTERVAL);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    private List<StringRecord> read(ReadOffset offset) {
+        StreamReadOptions options = StreamReadOptions.empty().count(SECKILL_ORDER_BATCH_SIZE).block(BLOCK_TIMEOUT);
+        StreamOffset<String> stream = StreamOffset.create(SECKILL_ORDER_STREAM_KEY, offset);
+        return stringRedisTemplate.execute((RedisCallback<List<StringRecord>>) connection ->
+                ((StringRedisConnection) connection).xReadGroupAsString(consumer, options, stream));
+    }
+
+    /**
+     * 把其他消费者未确认超过 SECKILL_ORDER_CLAIM_IDLE 的订单认领到本节点，并删除已经没有未确认订单的旧消费者
+     *
+     * @return 认领的订单数
+     */
+    private int claimIdle() {
+        // 1. 找出其他消费者长时间未确认的订单
+        PendingMessages pending = stringRedisTemplate.opsForStream().pending(SECKILL_ORDER_STREAM_KEY,
+                SECKILL_ORDER_STREAM_GROUP, Range.unbounded(), SECKILL_ORDER_BATCH_SIZE);
+        RecordId[] idle = pending.stream()
+                .filter(p -> !p.getConsumerName().equals(consumer.getName()))
+                .filter(p -> p.getElapsedTimeSinceLastDelivery().toMillis() > SECKILL_ORDER_CLAIM_IDLE)
+                .map(PendingMessage::getId)
+                .toArray(RecordId[]::new);
+        int claimed = 0;
+        if (idle.length > 0) {
+            // 2. 认领，XCLAIM 会再检查一次空闲时间，其他节点同时认领时只有一个节点成功
+            List<StringRecord> records = stringRedisTemplate.execute((RedisCallback<List<StringRecord>>) connection ->
+                    ((StringRedisConnection) connection).xClaim(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_STREAM_GROUP,
+                            consumer.getName(), Duration.ofMillis(SECKILL_ORDER_CLAIM_IDLE), idle));
+            claimed = records == null ? 0 : records.size();
+            if (claimed > 0) {
+                log.warn("认领其他消费者未确认的订单: {}", claimed);
+            }
+        }
+        // 3. 删除没有未确认订单、长时间空闲的消费者（已经下线的实例）
+        stringRedisTemplate.opsForStream().consumers(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_STREAM_GROUP).stream()
+                .filter(c -> !c.consumerName().equals(consumer.getName()))
+                .filter(c -> c.pendingCount() == 0 && c.idleTimeMs() > SECKILL_ORDER_CONSUMER_IDLE)
+                .forEach(c -> stringRedisTemplate.opsForStream().deleteConsumer(SECKILL_ORDER_STREAM_KEY,
+                        Consumer.from(SECKILL_ORDER_STREAM_GROUP, c.consumerName())));
+        return claimed;
+    }
+
+    private VoucherOrder toOrder(StringRecord record) {
+        Map<String, String> value = record.getValue();
+        VoucherOrder order = new VoucherOrder();
+        order.setUserId(Long.valueOf(value.get("userId")));
+        order.setVoucherId(Long.valueOf(value.get("voucherId")));
+        String id = value.get("id");
+        if (id != null) {
+            order.setId(Long.valueOf(id));
+        } else {
+            // 脚本写入的订单，用时间戳和序列号拼出订单 id
+            LocalDateTime time = LocalDateTime.ofEpochSecond(Long.parseLong(value.get("timestamp")), 0, ZoneOffset.UTC);
+            order.setId(redisIdWorker.toId(time, Long.parseLong(value.get("seq"))));
+        }
+        return order;
+    }
+}
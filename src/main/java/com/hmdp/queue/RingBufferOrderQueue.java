@@ -0,0 +1,113 @@
+package com.hmdp.queue;
+
+import com.hmdp.entity.VoucherOrder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 进程内的订单队列：多生产者、单消费者的有界环形队列，消费线程每次取出一批订单落库。
+ * 适用于单节点部署和压测。订单只在内存中，进程崩溃时未落库的订单由库存对账（StockReconciler）补发；
+ * 正常关闭时会先把队列中的订单全部落库。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "seckill.order.queue", havingValue = "memory")
+public class RingBufferOrderQueue implements OrderQueue {
+
+    // 队列为空时消费线程休眠的时间
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Resource
+    private OrderBatchHandler orderBatchHandler;
+
+    private final AtomicReferenceArray<VoucherOrder> slots = new AtomicReferenceArray<>(SECKILL_ORDER_RING_CAPACITY);
+    private final int mask = SECKILL_ORDER_RING_CAPACITY - 1;
+    // 下一个写入位置，生产者 CAS 抢占
+    private final AtomicLong tail = new AtomicLong();
+    // 下一个读取位置，只有消费线程修改
+    private volatile long head;
+
+    private final Thread drainer = new Thread(this::drain, "order-ring-drainer");
+    private volatile boolean running = true;
+
+    @PostConstruct
+    private void init() {
+        drainer.start();
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(drainer);
+        drainer.join(TimeUnit.SECONDS.toMillis(SECKILL_ORDER_SHUTDOWN_TIMEOUT));
+        if (drainer.isAlive()) {
+            log.warn("关闭时仍有 {} 个订单未落库", tail.get() - head);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> send(VoucherOrder order) {
+        // 1. 抢占一个位置，队列已满时拒绝（调用方归还库存）
+        long t;
+        do {
+            t = tail.get();
+            if (t - head >= SECKILL_ORDER_RING_CAPACITY || !running) {
+                CompletableFuture<Void> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(new RejectedExecutionException("订单队列已满"));
+                return rejected;
+            }
+        } while (!tail.compareAndSet(t, t + 1));
+        // 2. 写入订单，消费线程看到非 null 才会读取
+        slots.set((int) (t & mask), order);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    // 只统计本节点队列中的订单
+    @Override
+    public long lag() {
+        return tail.get() - head;
+    }
+
+    private void drain() {
+        List<VoucherOrder> batch = new ArrayList<>(SECKILL_ORDER_BATCH_SIZE);
+        // 关闭时继续消费，直到队列中的订单全部落库
+        while (running || head < tail.get()) {
+            // 1. 按顺序取出已经写入的订单，遇到已抢占但还没写入的位置就停下
+            long h = head;
+            VoucherOrder order;
+            while (batch.size() < SECKILL_ORDER_BATCH_SIZE && (order = slots.get((int) (h & mask))) != null) {
+                slots.set((int) (h & mask), null);
+                batch.add(order);
+                h++;
+            }
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            // 取出后即释放位置，生产者可以继续写入
+            head = h;
+            // 2. 落库（失败的订单在里面补偿）
+            try {
+                orderBatchHandler.handle(batch);
+            } catch (Exception e) {
+                log.error("订单落库失败, 本批订单数: {}", batch.size(), e);
+            }
+            batch.clear();
+        }
+    }
+}
@@ -4,6 +4,9 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * <p>
  *  服务类
@@ -14,7 +17,13 @@ import com.hmdp.entity.VoucherOrder;
  */
 public interface IVoucherOrderService extends IService<VoucherOrder> {
 
-    Result seckillVoucher(Long voucherId);
+    CompletableFuture<Result> seckillVoucher(Long voucherId);
+
+    Result queryOrderStatus(Long orderId);
 
     void createVoucherOrder(VoucherOrder order);
+
+    void createVoucherOrders(List<VoucherOrder> orders);
+
+    void compensateOrder(VoucherOrder order);
 }
@@ -1,6 +1,5 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
@@ -136,14 +135,9 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
 
         // 2.2 不为空，解析出用户 id 信息
         List<Long> userIds = top5.stream().map(Long::valueOf).collect(Collectors.toList());
-        String idStr = StrUtil.join(",", userIds);
-
-        // 2.2 不为空，转化为 UserDTO 列表
-        List<UserDTO> userDTOS = userService.query()
-                .in("id", userIds).last("ORDER BY FIELD(id," + idStr + ")").list()
-                .stream()
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
-                .collect(Collectors.toList());
+
+        // 2.2 不为空，转化为 UserDTO 列表（走缓存批量查询，保持点赞顺序）
+        List<UserDTO> userDTOS = userService.queryUserDTOByIds(userIds);
 
         return Result.ok(userDTOS);
     }
@@ -1,6 +1,5 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
@@ -82,11 +81,8 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
         // 3. 解析 id 集合
         List<Long> ids = interSet.stream().map(Long::valueOf).collect(Collectors.toList());
 
-        // 4. 查询用户信息（这回不需要处理顺序了）
-        List<UserDTO> userDTOS = userService.listByIds(ids)
-                .stream()
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
-                .collect(Collectors.toList());
+        // 4. 查询用户信息（走缓存批量查询，这回不需要处理顺序了）
+        List<UserDTO> userDTOS = userService.queryUserDTOByIds(ids);
         return Result.ok(userDTOS);
     }
 }
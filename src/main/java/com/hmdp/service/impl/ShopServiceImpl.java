@@ -1,9 +1,9 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
@@ -12,6 +12,7 @@ import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.RedisBloomFilter;
 import com.hmdp.utils.RedisData;
 import com.hmdp.utils.SystemConstants;
 import org.springframework.data.geo.Distance;
@@ -23,6 +24,7 @@ import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.io.Serializable;
 import java.time.LocalDateTime;
@@ -30,6 +32,9 @@ import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -50,6 +55,29 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     CacheClient cacheClient;
 
+    // 已存在店铺 id 的布隆过滤器，应对缓存穿透
+    private RedisBloomFilter shopBloomFilter;
+
+    @PostConstruct
+    private void initBloomFilter() {
+        // 启动时根据 tb_shop 中的全部 id 重建布隆过滤器，按 id 做 keyset 分页，不一次加载全部 id
+        shopBloomFilter = new RedisBloomFilter(BLOOM_SHOP_KEY, BLOOM_SHOP_EXPECTED_INSERTIONS, BLOOM_SHOP_FPP, stringRedisTemplate);
+        AtomicLong lastId = new AtomicLong();
+        shopBloomFilter.rebuild(() -> {
+            List<Long> ids = listObjs(new QueryWrapper<Shop>()
+                    .select("id")
+                    .gt("id", lastId.get())
+                    .orderByAsc("id")
+                    .last("LIMIT " + BLOOM_REBUILD_BATCH_SIZE), id -> Long.valueOf(id.toString()));
+            if (!ids.isEmpty()) {
+                lastId.set(ids.get(ids.size() - 1));
+            }
+            return ids;
+        });
+        cacheClient.registerBloomFilter(CACHE_SHOP_KEY, shopBloomFilter);
+        cacheClient.registerBloomFilter(CACHE_SHOP_LIST_KEY, shopBloomFilter);
+    }
+
     @Override
     public Result queryById(Long id) {
         // v1: 通过缓存空对象应对缓存穿透
@@ -58,9 +86,9 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         // v2.1: 通过互斥锁应对缓存击穿，通过缓存空对象应对缓存穿透
         // Shop shop = queryWithMutex(id);
 
-        // v2.2: 通过互斥锁应对缓存击穿，通过缓存空对象应对缓存穿透
-        Shop shop = cacheClient
-                .getWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.SECONDS);
+        // v2.2: 通过逻辑过期应对缓存击穿，并按上次重建耗时概率性地提前刷新
+        Shop shop = cacheClient.getWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById,
+                CACHE_SHOP_TTL, TimeUnit.SECONDS, CACHE_EARLY_REFRESH_BETA);
 
         if (shop == null) {
             return Result.fail("店铺不存在!");
@@ -68,54 +96,19 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
 
-    // TODO: 一并放到 CacheClient 中
     public Shop queryWithMutex(Long id) {
-        // 1. 查 Redis cache
-        String key = CACHE_SHOP_KEY + id;
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-
-        // 2. 判断 cache 是否命中
-        if (StrUtil.isNotBlank(shopJson)) {
-            // 命中有效数据，返回成功
-            return JSONUtil.toBean(shopJson, Shop.class);
-        }
-        if (shopJson != null) {
-            // 命中无效数据，返回错误
-            return null;
-        }
-
-        String lockKey = LOCK_SHOP_KEY + id;
-        Shop shop = null;
-        try {
-            // 3. 未命中，缓存重建
-            // 3.1 尝试获取锁
-            // 3.2 判断是否获取成功
-            boolean isLock = cacheClient.tryLock(lockKey, LOCK_SHOP_TTL);
-            if (!isLock) {
-                // 3.3 获取锁失败，休眠并重试
-                Thread.sleep(50);
-                // TODO: 看看能不能不使用递归
-                return queryWithMutex(id);
-            }
-
-            // 3.4 获取锁成功，查数据库，更新缓存
-            shop = getById(id);
-            // 判断 数据库 是否命中
-            if (shop == null) {
-                // 4. 未命中，写入一个空对象（应对缓存穿透），报错
-                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-                return null;
-            }
-            // 5. 命中，将数据写入 cache
-            stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        } finally {
-            // 6. 释放锁
-            cacheClient.unLock(lockKey);
-        }
+        // 未命中时同一个 key 只会有一个请求查数据库，其余请求等待重建结果（不再休眠重试）
+        return cacheClient.getWithMutex(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
 
-        return shop;
+    @Override
+    public Result saveShop(Shop shop) {
+        // 1. 写入数据库
+        save(shop);
+        // 2. 加入布隆过滤器
+        shopBloomFilter.add(shop.getId());
+        // 3. 返回店铺id
+        return Result.ok(shop.getId());
     }
 
     @Override
@@ -129,8 +122,9 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         // 1. 更新数据库
         updateById(shop);
 
-        // 2. 删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        // 2. 删除缓存（包括各节点的本地缓存）
+        cacheClient.delete(CACHE_SHOP_KEY + id);
+        cacheClient.delete(CACHE_SHOP_LIST_KEY + id);
         return Result.ok();
     }
 
@@ -180,11 +174,15 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             return Result.ok(Collections.emptyList());
         }
 
-        // 5. 根据 id 查询 shop
-        List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD(id," + StrUtil.join(",", ids) + ")").list();
-        shops.forEach(shop -> {
-            shop.setDistance(idDistanceMap.get(shop.getId().toString()));
-        });
+        // 5. 根据 id 查询 shop（一次 MGET 查缓存，未命中的一次性查数据库），结果保持距离顺序
+        Map<Long, Shop> shopMap = cacheClient.getAll(CACHE_SHOP_LIST_KEY, ids, Shop.class,
+                missIds -> listByIds(missIds).stream().collect(Collectors.toMap(Shop::getId, Function.identity())),
+                CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        // NOTE: 缓存中的对象是共享的，复制一份再设置距离
+        List<Shop> shops = shopMap.values().stream()
+                .map(shop -> BeanUtil.copyProperties(shop, Shop.class)
+                        .setDistance(idDistanceMap.get(shop.getId().toString())))
+                .collect(Collectors.toList());
 
         return Result.ok(shops);
     }
@@ -1,21 +1,19 @@
 package com.hmdp.service.impl;
 
-import ch.qos.logback.core.util.TimeUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
-import com.hmdp.entity.Shop;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.CacheMetrics;
 import com.hmdp.utils.RedisConstants;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -30,26 +28,34 @@ import java.util.stream.Collectors;
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
     @Resource
-    StringRedisTemplate stringRedisTemplate;
+    RedisTemplate<String, byte[]> bytesRedisTemplate;
+    @Resource
+    CacheCodec cacheCodec;
+    @Resource
+    CacheMetrics cacheMetrics;
+
     @Override
     public Result queryTypeList() {
         // 1. 查 Redis cache
         String key = RedisConstants.CACHE_SHOPTYPE_KEY;
-        List<String> shopTypeJsonList = stringRedisTemplate.opsForList().range(key, 0, -1);
+        List<byte[]> shopTypeBytesList = bytesRedisTemplate.opsForList().range(key, 0, -1);
 
         // 2. 判断 cache 是否命中
-        if (shopTypeJsonList != null && !shopTypeJsonList.isEmpty()) {
-            // 命中
-            List<ShopType> shopTypeList = shopTypeJsonList.stream() // 将JsonList转换为一个Stream流
-                    .map(json -> {
-                        return JSONUtil.toBean(json, ShopType.class);
-                    })
+        if (shopTypeBytesList != null && !shopTypeBytesList.isEmpty()) {
+            // 命中（兼容旧的 JSON 格式）
+            cacheMetrics.request(key, CacheMetrics.HIT, CacheMetrics.REDIS);
+            cacheMetrics.payload(key, "read", shopTypeBytesList.stream().mapToInt(bytes -> bytes.length).sum());
+            List<ShopType> shopTypeList = shopTypeBytesList.stream() // 将List转换为一个Stream流
+                    .map(bytes -> cacheCodec.decode(bytes, ShopType.class))
                     .collect(Collectors.toList()); // 将Stream中的元素收集到一个新的List中
             return Result.ok(shopTypeList);
         }
 
         // 3. cache 未命中，查数据库
+        cacheMetrics.request(key, CacheMetrics.MISS, CacheMetrics.REDIS);
+        long begin = System.nanoTime();
         List<ShopType> shopTypeList = query().orderByAsc("sort").list();
+        cacheMetrics.load(key, System.nanoTime() - begin);
 
         // 4. 判断 数据库 是否命中
         if (shopTypeList == null || shopTypeList.isEmpty()) {
@@ -58,9 +64,11 @@ public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> i
         }
 
         // 5. 命中，将数据写入 cache，注意保持顺序
-        stringRedisTemplate.opsForList().rightPushAll(key, shopTypeList.stream()
-                .map(JSONUtil::toJsonStr)
-                .collect(Collectors.toList()));
+        List<byte[]> encoded = shopTypeList.stream()
+                .map(cacheCodec::encode)
+                .collect(Collectors.toList());
+        cacheMetrics.payload(key, "write", encoded.stream().mapToInt(bytes -> bytes.length).sum());
+        bytesRedisTemplate.opsForList().rightPushAll(key, encoded);
         return Result.ok(shopTypeList);
     }
 }
@@ -1,7 +1,6 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
@@ -11,6 +10,7 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.JWTUtils;
 import com.hmdp.utils.RegexUtils;
 import com.hmdp.utils.UserHolder;
@@ -25,10 +25,10 @@ import javax.servlet.http.HttpSession;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
@@ -47,6 +47,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private CacheClient cacheClient;
 
     @Override
     public Result sendCode(String phone, HttpSession session) {
@@ -95,11 +97,11 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         // 7. 如果存在，生成 JWT 令牌，返回给用户。
         // 7.1 生成一个 JWT 作为登录令牌
         String token = JWTUtils.generateToken(user.getId());
-        // 7.2 将 User 对象转为 Hash 存储
-        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
-        Map<String, Object> userMap = BeanUtil.beanToMap(userDTO, new HashMap<>(),
-                CopyOptions.create()
-                        .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
+        // 7.2 将 User 对象转为 Hash 存储（字段很少，直接赋值，避免反射）
+        Map<String, String> userMap = new HashMap<>(4);
+        userMap.put("id", user.getId().toString());
+        userMap.put("nickName", user.getNickName());
+        userMap.put("icon", user.getIcon() == null ? "" : user.getIcon());
         // 7.3 存储到 Redis (使用 userId 做为键）
         stringRedisTemplate.opsForHash().putAll(LOGIN_USER_KEY + user.getId(), userMap);
         // 7.4 设置有效期
@@ -160,6 +162,17 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return Result.ok(cnt);
     }
 
+    @Override
+    public List<UserDTO> queryUserDTOByIds(Collection<Long> ids) {
+        // 一次 MGET 查缓存，未命中的用户一次性查数据库，结果保持 ids 的顺序
+        Map<Long, UserDTO> userDTOMap = cacheClient.getAll(CACHE_USER_KEY, ids, UserDTO.class,
+                missIds -> listByIds(missIds).stream()
+                        .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+                        .collect(Collectors.toMap(UserDTO::getId, Function.identity())),
+                CACHE_USER_TTL, TimeUnit.MINUTES);
+        return new ArrayList<>(userDTOMap.values());
+    }
+
     private User createUserWithPhone(String phone) {
         // 1. 创建用户
         User user = new User();
@@ -2,24 +2,54 @@ package com.hmdp.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
+import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
+import com.hmdp.queue.OrderQueue;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.LocalCache;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.SeckillKeys;
+import com.hmdp.utils.SeckillStockLease;
 import com.hmdp.utils.UserHolder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RedissonClient;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
-import java.util.Collections;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -40,7 +70,19 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private StringRedisTemplate stringRedisTemplate;
     @Resource
-    private KafkaTemplate kafkaTemplate;
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+    @Resource
+    private OrderQueue orderQueue;
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+    @Resource
+    private SeckillAdmission seckillAdmission;
+    @Resource
+    private SeckillStockLease seckillStockLease;
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Resource
+    private MeterRegistry meterRegistry;
     /**
      * 自己注入自己为了获取代理对象 @Lazy 延迟注入 避免形成循环依赖
      */
@@ -55,56 +97,464 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         SECKILL_SCRIPT.setResultType(Long.class);
     }
 
+    private static final DefaultRedisScript<Long> COMPENSATE_SCRIPT;
+    static {
+        COMPENSATE_SCRIPT = new DefaultRedisScript<>();
+        COMPENSATE_SCRIPT.setLocation(new ClassPathResource("compensate.lua"));
+        COMPENSATE_SCRIPT.setResultType(Long.class);
+    }
+
+    // 本地售罄标记：已售罄的券直接拒绝，不再访问 Redis，标记过期后放请求去 Redis 确认（防止错过补货消息后一直拒绝请求）
+    private final LocalCache soldOutVouchers = new LocalCache(SECKILL_LOCAL_MAX_VOUCHERS);
+
+    // 本地缓存的秒杀时间窗口：voucherId -> {开始时间, 结束时间}（epoch 秒），有上限和有效期
+    private final LocalCache windows = new LocalCache(SECKILL_LOCAL_MAX_VOUCHERS);
+    private static final long[] NO_WINDOW = new long[0];
+
+    // 是否连接的是 Redis Cluster
+    private boolean clusterMode;
+
+    // 订单投递线程池：脚本的回调在 Redis 的 IO 线程中执行，发送订单消息（如 KafkaProducer.send 可能阻塞）不能占用 IO 线程
+    private ThreadPoolExecutor orderExecutor;
+    // 补偿线程池：投递失败时归还库存，补偿中有同步的数据库和 Redis 调用，与投递分开，投递线程池满了也能补偿
+    private ThreadPoolExecutor compensateExecutor;
+    private Counter compensateFailedCounter;
+
+    @PostConstruct
+    private void init() {
+        RedisConnectionFactory connectionFactory = stringRedisTemplate.getConnectionFactory();
+        clusterMode = connectionFactory instanceof LettuceConnectionFactory
+                && ((LettuceConnectionFactory) connectionFactory).isClusterAware();
+        AtomicInteger threadNo = new AtomicInteger();
+        orderExecutor = new ThreadPoolExecutor(
+                SECKILL_ORDER_EXECUTOR_THREADS, SECKILL_ORDER_EXECUTOR_THREADS,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(SECKILL_ORDER_EXECUTOR_QUEUE_CAPACITY),
+                r -> new Thread(r, "seckill-order-" + threadNo.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        Gauge.builder("seckill.order.executor.queue.depth", orderExecutor, e -> e.getQueue().size())
+                .description("等待投递的订单数")
+                .register(meterRegistry);
+        AtomicInteger compensateThreadNo = new AtomicInteger();
+        compensateExecutor = new ThreadPoolExecutor(
+                SECKILL_COMPENSATE_THREADS, SECKILL_COMPENSATE_THREADS,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(SECKILL_COMPENSATE_QUEUE_CAPACITY),
+                r -> new Thread(r, "seckill-compensate-" + compensateThreadNo.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        compensateFailedCounter = Counter.builder("seckill.order.compensate.failed")
+                .description("投递失败后没能补偿、留给库存对账补单的订单数")
+                .register(meterRegistry);
+        // 订阅售罄频道，任一节点发现售罄后，所有节点都打上本地标记（本节点的库存租约中还有库存时除外）
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            Long voucherId = Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (!seckillStockLease.hasStock(voucherId)) {
+                markSoldOut(voucherId);
+            }
+        }, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+        // 订阅补货频道，库存重新写入后清掉本地标记，时间窗口和租约配置可能也变了，一并清掉
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            Long voucherId = Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8));
+            soldOutVouchers.remove(voucherId.toString());
+            windows.remove(voucherId.toString());
+            seckillStockLease.invalidate(voucherId);
+        }, new ChannelTopic(SECKILL_RESTOCK_CHANNEL));
+    }
+
+    @PreDestroy
+    private void shutdown() throws InterruptedException {
+        // 等待已经扣减了库存的订单投递出去（投递失败的订单还要补偿）
+        orderExecutor.shutdown();
+        if (!orderExecutor.awaitTermination(SECKILL_ORDER_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+            log.warn("订单未能在 {} 秒内投递完毕，强制关闭", SECKILL_ORDER_SHUTDOWN_TIMEOUT);
+            orderExecutor.shutdownNow();
+        }
+        compensateExecutor.shutdown();
+        if (!compensateExecutor.awaitTermination(SECKILL_ORDER_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+            log.warn("订单补偿未能在 {} 秒内执行完毕，强制关闭", SECKILL_ORDER_SHUTDOWN_TIMEOUT);
+            compensateExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 用本地缓存的时间窗口检查秒杀是否开始/结束，不在窗口内返回错误信息。
+     * 本地时钟只用来提前拒绝，以脚本中 Redis 的时间为准
+     */
+    private String checkWindow(Long voucherId) {
+        long[] window = (long[]) windows.get(voucherId.toString());
+        if (window == null) {
+            // 每个节点每张券在有效期内只读一次
+            window = loadWindow(voucherId);
+            windows.put(voucherId.toString(), window, TimeUnit.SECONDS.toMillis(SECKILL_LOCAL_CONFIG_TTL));
+        }
+        if (window == NO_WINDOW) {
+            return null;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        if (now < window[0]) {
+            return "秒杀尚未开始！";
+        }
+        if (now > window[1]) {
+            return "秒杀已经结束！";
+        }
+        return null;
+    }
+
+    private long[] loadWindow(Long voucherId) {
+        String value = stringRedisTemplate.opsForValue().get(SeckillKeys.windowKey(voucherId));
+        if (value == null) {
+            return NO_WINDOW;
+        }
+        int idx = value.indexOf(':');
+        return new long[]{Long.parseLong(value.substring(0, idx)), Long.parseLong(value.substring(idx + 1))};
+    }
+
+    private boolean isSoldOut(Long voucherId) {
+        // 标记过期后放请求去 Redis 确认，仍然售罄会重新打上标记
+        return soldOutVouchers.get(voucherId.toString()) != null;
+    }
+
+    private void markSoldOut(Long voucherId) {
+        soldOutVouchers.put(voucherId.toString(), Boolean.TRUE, TimeUnit.SECONDS.toMillis(SECKILL_SOLD_OUT_TTL));
+    }
+
     @Override
-    @Transactional
-    public Result seckillVoucher(Long voucherId) {
-        // 获取用户
+    public CompletableFuture<Result> seckillVoucher(Long voucherId) {
+        // 已售罄，直接返回，不产生任何网络 IO
+        if (isSoldOut(voucherId)) {
+            return CompletableFuture.completedFuture(Result.fail("库存不足！"));
+        }
+        // 不在秒杀时间内，直接返回
+        String outOfWindow = checkWindow(voucherId);
+        if (outOfWindow != null) {
+            return CompletableFuture.completedFuture(Result.fail(outOfWindow));
+        }
+        // 获取用户（ThreadLocal 中的用户只在当前线程可见，必须在进入异步回调之前取出）
         Long userId = UserHolder.getUser().getId();
-        // 获取订单ID
-        long orderId = redisIdWorker.nextId("order");
-
-        // 1.执行lua脚本
-        Long result = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(),
-                voucherId.toString(),
-                userId.toString(),
-                String.valueOf(orderId));
-
-        // 2.判断结果是否为0
-        int r = result.intValue();
-        if (r != 0) {
-            // 2.1.不为0 ，代表没有购买资格
-            return Result.fail(r == 1 ? "库存不足！" : "不能重复下单！");
-        }
-
-        // 3. 构建订单对象并发送到Kafka
-        // Topic: voucher-orders
+        if (userId < 0 || userId > SECKILL_BUYERS_MAX_USER_ID) {
+            // 已下单用户记在 bitmap 中，偏移量最大为 2^32 - 1
+            log.error("用户 id 超出已下单用户 bitmap 的范围, userId: {}", userId);
+            return CompletableFuture.completedFuture(Result.fail("活动太火爆，请稍后再试！"));
+        }
+        // 记录库存 key 的访问，用于热点探测
+        hotKeyDetector.record(SeckillKeys.stockKey(voucherId));
+        // 库存租约大小（可能读取 Redis，必须在进入异步回调之前取出）
+        int leaseSize = seckillStockLease.leaseSize(voucherId);
+        // 准入控制，已经不可能抢到的请求直接拒绝
+        return seckillAdmission.tryAcquire(voucherId)
+                .thenCompose(admitted -> {
+                    if (!admitted) {
+                        return CompletableFuture.completedFuture(Result.fail("活动太火爆，请稍后再试！"));
+                    }
+                    if (leaseSize <= 0) {
+                        return doSeckill(voucherId, userId, null);
+                    }
+                    // 租约模式：先在本地租约中扣减库存，Redis 中只检查一人一单
+                    return seckillStockLease.take(voucherId, leaseSize).thenCompose(lease -> {
+                        if (lease == null) {
+                            soldOut(voucherId);
+                            return CompletableFuture.completedFuture(Result.fail(failMessage(-1)));
+                        }
+                        return doSeckill(voucherId, userId, lease);
+                    });
+                });
+    }
+
+    private void soldOut(Long voucherId) {
+        if (!isSoldOut(voucherId)) {
+            // 库存不足，本地打上售罄标记，并通知其他节点
+            markSoldOut(voucherId);
+            reactiveStringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId.toString()).subscribe();
+        }
+    }
+
+    /**
+     * @param lease 已经扣减了库存的租约，为 null 时在脚本中扣减 Redis 中的库存
+     */
+    private CompletableFuture<Result> doSeckill(Long voucherId, Long userId, SeckillStockLease.Lease lease) {
+        // 订单ID的时间戳部分，序列号在脚本中下单成功后才自增
+        LocalDateTime now = LocalDateTime.now();
+
+        // 1.异步执行lua脚本，一次 Redis 调用完成校验、扣减库存和生成序列号
+        // 集群模式下全局的序列号 key 和券的 key 不在同一个 slot，不交给脚本，下单成功后再单独生成
+        // 订单队列是 Redis Stream 时，非集群模式下订单也由脚本直接写入
+        String streamKey = clusterMode ? null : orderQueue.streamKey();
+        List<String> keys = new ArrayList<>(8);
+        keys.add(SeckillKeys.stockKey(voucherId));
+        keys.add(SeckillKeys.buyersKey(voucherId));
+        keys.add(SeckillKeys.windowKey(voucherId));
+        keys.add(SeckillKeys.leaseKey(voucherId));
+        keys.add(SeckillKeys.buyerCountKey(voucherId));
+        keys.add(SeckillKeys.pendingKey(voucherId));
+        if (!clusterMode) {
+            keys.add(redisIdWorker.sequenceKey("order", now));
+        }
+        if (streamKey != null) {
+            keys.add(streamKey);
+        }
+        List<String> args = new ArrayList<>(4);
+        args.add(userId.toString());
+        args.add(voucherId.toString());
+        args.add(String.valueOf(now.toEpochSecond(ZoneOffset.UTC)));
+        if (lease != null) {
+            args.add(seckillStockLease.getNodeId());
+        }
+        CompletableFuture<Long> script = reactiveStringRedisTemplate.execute(SECKILL_SCRIPT, keys, args)
+                .next()
+                .toFuture();
+        if (lease != null) {
+            // 脚本执行失败时把库存还给租约
+            script = script.whenComplete((r, e) -> {
+                if (e != null) {
+                    seckillStockLease.giveBack(voucherId, lease);
+                }
+            });
+        }
+        return script
+                .thenCompose(r -> {
+                    // 2.判断结果是否小于0
+                    if (r < 0) {
+                        // 2.1.小于0 ，代表没有购买资格
+                        if (r == -1) {
+                            soldOut(voucherId);
+                        } else if (r == -5) {
+                            // 租约已经在 Redis 中被回收，本地剩余的库存作废
+                            seckillStockLease.revoke(voucherId, lease);
+                        } else if (lease != null) {
+                            // 没有下单，把库存还给租约
+                            seckillStockLease.giveBack(voucherId, lease);
+                        }
+                        return CompletableFuture.completedFuture(Result.fail(failMessage(r)));
+                    }
+                    // 2.2.大于0 ，为订单ID的序列号
+                    if (streamKey != null) {
+                        // 订单已经在脚本中写入 Stream
+                        long orderId = redisIdWorker.toId(now, r);
+                        return markPending(orderId).thenApply(v -> Result.ok(orderId));
+                    }
+                    return nextOrderId(userId, voucherId, now, r)
+                            .thenCompose(orderId -> sendOrder(userId, voucherId, orderId));
+                });
+    }
+
+    private static String failMessage(long r) {
+        switch ((int) r) {
+            case -1:
+                return "库存不足！";
+            case -2:
+                return "不能重复下单！";
+            case -3:
+                return "秒杀尚未开始！";
+            case -4:
+                return "秒杀已经结束！";
+            default:
+                return "活动太火爆，请稍后再试！";
+        }
+    }
+
+    private CompletableFuture<Long> nextOrderId(Long userId, Long voucherId, LocalDateTime now, long seq) {
+        if (!clusterMode) {
+            return CompletableFuture.completedFuture(redisIdWorker.toId(now, seq));
+        }
+        // 集群模式下脚本没有生成序列号，这里异步自增，并记录到还没有落库的订单中（与脚本中的格式相同）
+        long timestamp = now.toEpochSecond(ZoneOffset.UTC);
+        return reactiveStringRedisTemplate.opsForValue()
+                .increment(redisIdWorker.sequenceKey("order", now))
+                .flatMap(count -> reactiveStringRedisTemplate.opsForHash()
+                        .put(SeckillKeys.pendingKey(voucherId), userId.toString(), timestamp + ":" + count)
+                        .thenReturn(redisIdWorker.toId(now, count)))
+                .toFuture();
+    }
+
+    private CompletableFuture<Result> sendOrder(Long userId, Long voucherId, long orderId) {
+        // 3. 构建订单对象并放入订单队列
         VoucherOrder voucherOrder = new VoucherOrder();
         voucherOrder.setUserId(userId);
         voucherOrder.setVoucherId(voucherId);
         voucherOrder.setId(orderId);
 
-        kafkaTemplate.send("voucher-orders",  voucherOrder);
+        // 4. 先把订单标记为处理中，再换到订单投递线程池中放入队列（不占用 Redis 的 IO 线程）
+        // 5. 队列确认收到后返回订单id，投递失败则归还库存并把订单标记为失败
+        return markPending(orderId)
+                .thenComposeAsync(v -> orderQueue.send(voucherOrder), orderExecutor)
+                .handle((v, e) -> e)
+                .thenCompose(e -> {
+                    if (e == null) {
+                        return CompletableFuture.completedFuture(Result.ok(orderId));
+                    }
+                    // 消息没有发出去（或投递线程池已满），订单不会被消费，归还库存之后再应答，用户重试时已经不在已下单用户中
+                    log.error("订单消息发送失败, orderId: {}", orderId, e);
+                    return compensateAsync(voucherOrder).thenApply(compensated -> compensated
+                            ? Result.fail("下单失败，请重试！")
+                            // 没能补偿时用户仍在已下单用户中，库存对账会把订单补发出去，按下单成功应答
+                            : Result.ok(orderId));
+                });
+    }
+
+    /**
+     * 在补偿线程池中补偿投递失败的订单，返回是否补偿成功。失败（包括线程池已满）时记录日志和指标，不抛出异常
+     */
+    private CompletableFuture<Boolean> compensateAsync(VoucherOrder order) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                        compensateOrder(order);
+                        return true;
+                    }, compensateExecutor)
+                    .exceptionally(e -> {
+                        compensateFailedCounter.increment();
+                        log.error("订单补偿失败，留给库存对账补单, orderId: {}", order.getId(), e);
+                        return false;
+                    });
+        } catch (RejectedExecutionException e) {
+            compensateFailedCounter.increment();
+            log.error("补偿线程池已满，留给库存对账补单, orderId: {}", order.getId());
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    /**
+     * 订单进入队列时把状态标记为处理中，轮询订单状态时不用查数据库。
+     * 只在没有状态时写入：Stream 模式下订单可能已经被消费，不能覆盖消费者写入的结果。写入失败不影响下单
+     */
+    private CompletableFuture<Void> markPending(long orderId) {
+        return reactiveStringRedisTemplate.opsForValue()
+                .setIfAbsent(SECKILL_ORDER_STATUS_KEY + orderId, ORDER_STATUS_PENDING, Duration.ofMinutes(SECKILL_ORDER_STATUS_TTL))
+                .then()
+                .toFuture()
+                .exceptionally(e -> {
+                    log.warn("写入订单状态失败, orderId: {}", orderId, e);
+                    return null;
+                });
+    }
+
+    @Override
+    public void compensateOrder(VoucherOrder order) {
+        // 1. 用户在数据库中已经有这张券的订单（如重试时已经成功，或者是用户的另一个订单），不需要补偿，
+        //    也不能把用户移出已下单用户，订单状态以数据库中的订单为准
+        VoucherOrder existing = query().select("id")
+                .eq("user_id", order.getUserId())
+                .eq("voucher_id", order.getVoucherId())
+                .last("LIMIT 1")
+                .one();
+        if (existing != null) {
+            setOrderStatus(Collections.singletonList(order.getId()),
+                    existing.getId().equals(order.getId()) ? ORDER_STATUS_SUCCESS : ORDER_STATUS_FAILED);
+            return;
+        }
+        // 2. 把用户移出已下单用户，归还库存（同一个订单重复补偿时脚本返回 0）
+        Long voucherId = order.getVoucherId();
+        Long restored = stringRedisTemplate.execute(COMPENSATE_SCRIPT,
+                Arrays.asList(SeckillKeys.stockKey(voucherId), SeckillKeys.buyersKey(voucherId),
+                        SeckillKeys.buyerCountKey(voucherId), SeckillKeys.pendingKey(voucherId)),
+                order.getUserId().toString());
+        if (restored != null && restored == 1) {
+            // 3. 重新有库存了，通知所有节点清掉售罄标记
+            stringRedisTemplate.convertAndSend(SECKILL_RESTOCK_CHANNEL, voucherId.toString());
+            log.info("已归还库存, orderId: {}, voucherId: {}", order.getId(), voucherId);
+        }
+        setOrderStatus(Collections.singletonList(order.getId()), ORDER_STATUS_FAILED);
+    }
+
+    @Override
+    public Result queryOrderStatus(Long orderId) {
+        // 1. 查询订单状态
+        String status = stringRedisTemplate.opsForValue().get(SECKILL_ORDER_STATUS_KEY + orderId);
+        if (status == null) {
+            // 2. 状态已过期（或没有写入成功），以数据库为准
+            status = getById(orderId) != null ? ORDER_STATUS_SUCCESS : ORDER_STATUS_PENDING;
+        }
+        switch (status) {
+            case ORDER_STATUS_SUCCESS:
+                return Result.ok("SUCCESS");
+            case ORDER_STATUS_FAILED:
+                return Result.ok("FAILED");
+            default:
+                return Result.ok("PENDING");
+        }
+    }
+
+    // 订单落库（或被丢弃）的事务提交之后，再更新订单状态，以提交时集合中的订单为准
+    private void setOrderStatusAfterCommit(Collection<Long> orderIds, String status) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                if (!orderIds.isEmpty()) {
+                    setOrderStatus(orderIds, status);
+                }
+            }
+        });
+    }
 
-        // 4.返回订单id
-        return Result.ok(orderId);
+    // 事务结束（提交或回滚）之后，在补偿线程池中补偿最终失败的订单：归还 Redis 库存，把用户移出已下单用户。
+    // 补偿时要查询数据库，不能在事务同步回调中使用当前事务的连接
+    private void compensateAfterCompletion(Collection<VoucherOrder> orders) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                orders.forEach(VoucherOrderServiceImpl.this::compensateAsync);
+            }
+        });
     }
 
+    // 批量落库的事务提交之后补偿被丢弃的订单。回滚时不补偿：调用方会改为逐条落库，由 createVoucherOrder 补偿
+    private void compensateAfterCommit(Collection<VoucherOrder> orders) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                orders.forEach(VoucherOrderServiceImpl.this::compensateAsync);
+            }
+        });
+    }
+
+    // 订单落库（或被丢弃）的事务提交之后，从还没有落库的订单中删除，库存对账不会再补发
+    private void clearPendingAfterCommit(Collection<VoucherOrder> orders) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                clearPending(orders);
+            }
+        });
+    }
+
+    private void clearPending(Collection<VoucherOrder> orders) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (VoucherOrder order : orders) {
+                conn.hDel(SeckillKeys.pendingKey(order.getVoucherId()), order.getUserId().toString());
+            }
+            return null;
+        });
+    }
+
+    private void setOrderStatus(Collection<Long> orderIds, String status) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long orderId : orderIds) {
+                conn.setEx(SECKILL_ORDER_STATUS_KEY + orderId, TimeUnit.MINUTES.toSeconds(SECKILL_ORDER_STATUS_TTL), status);
+            }
+            return null;
+        });
+    }
+
+    @Override
     @Transactional
     public void createVoucherOrder(VoucherOrder order) {
+        clearPendingAfterCommit(Collections.singletonList(order));
         // 6. 一人一单
-        // 6.1. 查询订单
-        // NOTE: 可以把简单的判断逻辑交给数据库做，把并发问题转移给数据库
-        Long userId = order.getUserId();
-        Long count = query().eq("user_id", userId).eq("voucher_id", order).count();
-        // 6.2. 判断是否存在
-        if (count > 0L) {
-            // 6.3. 若已存在，返回
-            log.error("用户已经购买过了");
+        // NOTE: 把判断交给数据库的唯一索引 (user_id, voucher_id)，重复的订单插入时直接被忽略
+        // 同一个用户的消息以 userId 为 key 落在同一个分区，按顺序消费，不需要再加分布式锁
+        if (getBaseMapper().insertIgnoreBatch(Collections.singletonList(order)) == 0) {
+            // 已经存在，可能是同一个订单的消息被重复投递
+            if (getById(order.getId()) != null) {
+                setOrderStatusAfterCommit(Collections.singletonList(order.getId()), ORDER_STATUS_SUCCESS);
+                return;
+            }
+            log.error("用户已经购买过了, orderId: {}", order.getId());
+            setOrderStatusAfterCommit(Collections.singletonList(order.getId()), ORDER_STATUS_FAILED);
+            compensateAfterCompletion(Collections.singletonList(order));
             return;
         }
-        // 6. 若有库存，扣减库存
+        // 7. 扣减库存
         // 利用数据库的行锁来解决超卖问题，一条 UPDATE 语句内的操作是原子的
         boolean success = seckillVoucherService.update()
                 .setSql("stock = stock - 1")
@@ -112,12 +562,111 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                 .gt("stock", 0).update();
 
         if (!success) {
-            // 扣减失败
-            log.error("库存不足");
+            // 扣减失败，回滚刚插入的订单，回滚之后归还 Redis 中的库存
+            log.error("库存不足, orderId: {}", order.getId());
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            setOrderStatus(Collections.singletonList(order.getId()), ORDER_STATUS_FAILED);
+            clearPending(Collections.singletonList(order));
+            compensateAfterCompletion(Collections.singletonList(order));
             return;
         }
+        setOrderStatusAfterCommit(Collections.singletonList(order.getId()), ORDER_STATUS_SUCCESS);
+    }
 
-        // 7. 保存订单
-        save(order);
+    @Override
+    @Transactional
+    public void createVoucherOrders(List<VoucherOrder> orders) {
+        // 事务提交后更新订单状态，并补偿最终失败的订单
+        List<Long> succeeded = new ArrayList<>(orders.size());
+        List<Long> failed = new ArrayList<>();
+        List<VoucherOrder> failedOrders = new ArrayList<>();
+        setOrderStatusAfterCommit(succeeded, ORDER_STATUS_SUCCESS);
+        setOrderStatusAfterCommit(failed, ORDER_STATUS_FAILED);
+        clearPendingAfterCommit(orders);
+        compensateAfterCommit(failedOrders);
+
+        // 1. 内存去重：同一个用户对同一张券只保留第一条（消息重投、重复消费）
+        Map<String, VoucherOrder> unique = new LinkedHashMap<>();
+        for (VoucherOrder order : orders) {
+            VoucherOrder first = unique.putIfAbsent(order.getUserId() + ":" + order.getVoucherId(), order);
+            if (first != null && !first.getId().equals(order.getId())) {
+                failed.add(order.getId());
+                failedOrders.add(order);
+            }
+        }
+
+        // 2. 去掉数据库中已经存在的订单，一条 SQL 查出本批涉及的所有 (用户, 券)
+        Set<Long> userIds = unique.values().stream().map(VoucherOrder::getUserId).collect(Collectors.toSet());
+        Set<Long> voucherIds = unique.values().stream().map(VoucherOrder::getVoucherId).collect(Collectors.toSet());
+        query().select("id", "user_id", "voucher_id")
+                .in("user_id", userIds)
+                .in("voucher_id", voucherIds)
+                .list()
+                .forEach(o -> {
+                    VoucherOrder order = unique.remove(o.getUserId() + ":" + o.getVoucherId());
+                    if (order == null) {
+                        return;
+                    }
+                    if (order.getId().equals(o.getId())) {
+                        // 同一个订单的消息被重复投递，已经落库了
+                        succeeded.add(order.getId());
+                    } else {
+                        log.error("用户已经购买过了, userId: {}, voucherId: {}", o.getUserId(), o.getVoucherId());
+                        failed.add(order.getId());
+                        failedOrders.add(order);
+                    }
+                });
+        if (unique.isEmpty()) {
+            return;
+        }
+
+        // 3. 按券分组，每张券只扣减一次库存：stock = stock - n
+        Map<Long, List<VoucherOrder>> byVoucher = unique.values().stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, LinkedHashMap::new, Collectors.toList()));
+        List<VoucherOrder> toSave = new ArrayList<>(unique.size());
+        byVoucher.forEach((voucherId, voucherOrders) -> {
+            int n = deductStock(voucherId, voucherOrders.size());
+            if (n < voucherOrders.size()) {
+                log.error("库存不足, voucherId: {}, 丢弃订单数: {}", voucherId, voucherOrders.size() - n);
+                voucherOrders.subList(n, voucherOrders.size()).forEach(o -> {
+                    failed.add(o.getId());
+                    failedOrders.add(o);
+                });
+            }
+            toSave.addAll(voucherOrders.subList(0, n));
+        });
+
+        // 4. 批量插入订单，唯一索引兜底
+        if (!toSave.isEmpty() && getBaseMapper().insertIgnoreBatch(toSave) != toSave.size()) {
+            // 查询之后又有其他消费者插入了同一个用户的订单（如分区再均衡），回滚整批，
+            // 调用方（VoucherOrderBatchConsumer / OrderBatchHandler）最终会改为逐条落库，重复的订单被唯一索引忽略
+            throw new IllegalStateException("批量插入订单时出现重复订单，回滚重试");
+        }
+        toSave.forEach(o -> succeeded.add(o.getId()));
+    }
+
+    /**
+     * 扣减 n 个库存，库存不够 n 个时扣减剩余的全部库存
+     * @return 实际扣减的数量
+     */
+    private int deductStock(Long voucherId, int n) {
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock - " + n)
+                .eq("voucher_id", voucherId)
+                .ge("stock", n).update();
+        if (success) {
+            return n;
+        }
+        // 正常情况下 Redis 已经挡住了超卖，走到这里说明两边库存不一致，能扣多少扣多少
+        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+        int remain = voucher == null ? 0 : Math.min(n, voucher.getStock());
+        if (remain <= 0) {
+            return 0;
+        }
+        success = seckillVoucherService.update()
+                .setSql("stock = stock - " + remain)
+                .eq("voucher_id", voucherId)
+                .ge("stock", remain).update();
+        return success ? remain : 0;
     }
 }
\ No newline at end of file
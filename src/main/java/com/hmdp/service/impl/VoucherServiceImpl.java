@@ -7,12 +7,17 @@ import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SeckillKeys;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.*;
@@ -56,7 +61,35 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucherService.save(seckillVoucher);
 
         // 保存库存信息到 Redis 中
-        stringRedisTemplate.opsForValue()
-                .set(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+        stringRedisTemplate.opsForValue().set(SeckillKeys.stockKey(voucher.getId()), voucher.getStock().toString());
+        // 保存秒杀时间窗口，秒杀脚本中校验
+        stringRedisTemplate.opsForValue().set(SeckillKeys.windowKey(voucher.getId()),
+                toEpochSecond(voucher.getBeginTime()) + ":" + toEpochSecond(voucher.getEndTime()));
+        // 保存库存租约配置
+        if (voucher.getStockLease() != null && voucher.getStockLease() > 1) {
+            stringRedisTemplate.opsForValue().set(SeckillKeys.leaseSizeKey(voucher.getId()), voucher.getStockLease().toString());
+        } else {
+            stringRedisTemplate.delete(SeckillKeys.leaseSizeKey(voucher.getId()));
+        }
+        // 保存准入限流配置
+        saveAdmissionLimit(voucher.getId(), voucher.getAdmissionRate(), voucher.getAdmissionBurst());
+        // 通知所有节点清掉该券的本地售罄标记
+        stringRedisTemplate.convertAndSend(SECKILL_RESTOCK_CHANNEL, voucher.getId().toString());
+    }
+
+    private static long toEpochSecond(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    private void saveAdmissionLimit(Long voucherId, Integer rate, Integer burst) {
+        String limitKey = SeckillKeys.limitKey(voucherId);
+        if (rate == null || rate <= 0) {
+            stringRedisTemplate.delete(limitKey);
+            return;
+        }
+        Map<String, String> limit = new HashMap<>(2);
+        limit.put("rate", rate.toString());
+        limit.put("burst", String.valueOf(burst == null || burst <= 0 ? rate : burst));
+        stringRedisTemplate.opsForHash().putAll(limitKey, limit);
     }
 }
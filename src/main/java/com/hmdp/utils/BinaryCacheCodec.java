@@ -0,0 +1,163 @@
+package com.hmdp.utils;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileParser;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 紧凑的二进制编解码器（Jackson Smile），较大的值（如博客内容）会额外压缩。
+ * <p>
+ * 格式：[魔数 1B][版本 1B][标志位 1B][逻辑过期字段 16B，可选][Smile 数据，可能被压缩]。
+ * 魔数 0xFE 不会出现在 UTF-8 文本中，没有魔数的数据按旧的 JSON 格式解码，方便平滑升级。
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    private static final byte MAGIC = (byte) 0xFE;
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 3;
+    // 标志位：数据经过压缩
+    private static final int FLAG_COMPRESSED = 1;
+    // 标志位：逻辑过期格式，header 之后是 expireTime(8B) 和 rebuildCost(8B)
+    private static final int FLAG_LOGICAL = 1 << 1;
+    private static final int LOGICAL_SIZE = 16;
+
+    private final ObjectMapper mapper;
+    private final CacheCodec legacyCodec = new JsonCacheCodec();
+    // 超过这个大小（字节）的数据会被压缩
+    private final int compressThreshold;
+
+    public BinaryCacheCodec(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+        SmileFactory factory = new SmileFactory();
+        // 自己的 header 已经标识了格式，不需要 Smile 的 header
+        factory.disable(SmileGenerator.Feature.WRITE_HEADER);
+        factory.disable(SmileParser.Feature.REQUIRE_HEADER);
+        this.mapper = new ObjectMapper(factory)
+                .registerModule(new JavaTimeModule())
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return write(0, null, value);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        if (!isBinary(bytes)) {
+            return legacyCodec.decode(bytes, type);
+        }
+        return read(bytes, HEADER_SIZE + ((bytes[2] & FLAG_LOGICAL) != 0 ? LOGICAL_SIZE : 0), type);
+    }
+
+    @Override
+    public byte[] encodeLogical(RedisData redisData) {
+        ByteBuffer logical = ByteBuffer.allocate(LOGICAL_SIZE);
+        logical.putLong(redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        logical.putLong(redisData.getRebuildCost() == null ? -1L : redisData.getRebuildCost());
+        return write(FLAG_LOGICAL, logical.array(), redisData.getData());
+    }
+
+    @Override
+    public <T> RedisData decodeLogical(byte[] bytes, Class<T> type) {
+        if (!isBinary(bytes) || (bytes[2] & FLAG_LOGICAL) == 0) {
+            return legacyCodec.decodeLogical(bytes, type);
+        }
+        ByteBuffer logical = ByteBuffer.wrap(bytes, HEADER_SIZE, LOGICAL_SIZE);
+        long expireAt = logical.getLong();
+        long rebuildCost = logical.getLong();
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(expireAt), ZoneId.systemDefault()));
+        redisData.setRebuildCost(rebuildCost < 0 ? null : rebuildCost);
+        // 只解析一次，直接得到目标类型
+        redisData.setData(read(bytes, HEADER_SIZE + LOGICAL_SIZE, type));
+        return redisData;
+    }
+
+    private static boolean isBinary(byte[] bytes) {
+        return bytes.length >= HEADER_SIZE && bytes[0] == MAGIC;
+    }
+
+    private byte[] write(int flags, byte[] extra, Object value) {
+        try {
+            byte[] payload = mapper.writeValueAsBytes(value);
+            if (payload.length > compressThreshold) {
+                payload = compress(payload);
+                flags |= FLAG_COMPRESSED;
+            }
+            int extraSize = extra == null ? 0 : extra.length;
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + extraSize + payload.length);
+            buffer.put(MAGIC).put(VERSION).put((byte) flags);
+            if (extra != null) {
+                buffer.put(extra);
+            }
+            buffer.put(payload);
+            return buffer.array();
+        } catch (IOException e) {
+            throw new IllegalStateException("缓存数据编码失败", e);
+        }
+    }
+
+    private <T> T read(byte[] bytes, int offset, Class<T> type) {
+        try {
+            byte[] payload = Arrays.copyOfRange(bytes, offset, bytes.length);
+            if ((bytes[2] & FLAG_COMPRESSED) != 0) {
+                payload = decompress(payload);
+            }
+            return mapper.readValue(payload, type);
+        } catch (IOException | DataFormatException e) {
+            throw new IllegalStateException("缓存数据解码失败", e);
+        }
+    }
+
+    private static byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+            byte[] buf = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] data) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+            byte[] buf = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && inflater.needsInput()) {
+                    throw new DataFormatException("压缩数据不完整");
+                }
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+}
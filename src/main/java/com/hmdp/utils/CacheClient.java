@@ -1,120 +1,594 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.Function;
 
 import static com.hmdp.utils.RedisConstants.*;
 
+@Slf4j
 @Component
 public class CacheClient {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisTemplate<String, byte[]> bytesRedisTemplate;
+    @Resource
+    private CacheCodec cacheCodec;
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+    @Resource
+    private CacheMetrics cacheMetrics;
+
+    // 一级缓存：进程内近端缓存，保存已经反序列化好的对象，二级缓存为 Redis。热点 key 在本地保存得更久
+    private final LocalCache localCache = new LocalCache(LOCAL_CACHE_MAX_SIZE);
+    // 本地缓存中表示"数据库中不存在"的占位对象（应对缓存穿透）
+    private static final Object NULL_VALUE = new Object();
+    // Redis 中表示"数据库中不存在"的空值
+    private static final byte[] NULL_BYTES = new byte[0];
+    // 当前节点标识，用于忽略自己发出的失效消息
+    private static final String NODE_ID = UUID.randomUUID().toString();
 
+    // 本节点内正在进行的缓存重建，同一个 key 的并发未命中共享同一个 future（single-flight）
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
+    // 等待其他节点重建完成的信号，收到 "rebuilt" 通知时完成
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> rebuildSignals = new ConcurrentHashMap<>();
+    // key 前缀 -> 布隆过滤器，判定为不存在的 id 直接拒绝，不再访问 Redis 和数据库
+    private final ConcurrentHashMap<String, RedisBloomFilter> bloomFilters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        // 订阅缓存失效频道，其他节点删除/更新缓存时，清掉本地的副本
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            int idx = body.indexOf('|');
+            if (idx < 0 || NODE_ID.equals(body.substring(0, idx))) {
+                return;
+            }
+            localRemove(body.substring(idx + 1));
+        }, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        // 订阅缓存重建完成频道，唤醒本节点上等待该 key 的请求
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String key = new String(message.getBody(), StandardCharsets.UTF_8);
+            CompletableFuture<Void> signal = rebuildSignals.remove(key);
+            if (signal != null) {
+                signal.complete(null);
+            }
+        }, new ChannelTopic(CACHE_REBUILT_CHANNEL));
+        // 订阅布隆过滤器新增元素频道，同步更新本地位图镜像
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            int idx = body.indexOf('|');
+            if (idx < 0) {
+                return;
+            }
+            String filterKey = body.substring(0, idx);
+            bloomFilters.values().stream()
+                    .filter(filter -> filter.getKey().equals(filterKey))
+                    .findFirst()
+                    .ifPresent(filter -> filter.addLocal(body.substring(idx + 1)));
+        }, new ChannelTopic(BLOOM_ADD_CHANNEL));
+    }
+
+    /**
+     * 为指定 key 前缀注册布隆过滤器，查询该前缀的缓存前先判断 id 是否可能存在
+     */
+    public void registerBloomFilter(String keyPrefix, RedisBloomFilter bloomFilter) {
+        bloomFilters.put(keyPrefix, bloomFilter);
+    }
+
+    // 布隆过滤器判定为不存在的 id 一定不存在；没有注册过滤器的前缀视为可能存在
+    private boolean mightExist(String keyPrefix, Object id) {
+        RedisBloomFilter bloomFilter = bloomFilters.get(keyPrefix);
+        return bloomFilter == null || bloomFilter.mightContain(id);
+    }
+
+    /**
+     * 更新缓存，同时清理所有节点上的本地副本
+     */
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        String json = JSONUtil.toJsonStr(value);
-        stringRedisTemplate.opsForValue().set(key, json, time, unit);
+        write(key, value, time, unit);
+        evictLocal(key);
+    }
+
+    // 只写入 Redis。缓存未命中后的回填不需要通知其他节点：它们的本地副本不会比数据库更新，最多在本地有效期内过期
+    private void write(String key, Object value, Long time, TimeUnit unit) {
+        byte[] bytes = cacheCodec.encode(value);
+        cacheMetrics.payload(key, "write", bytes.length);
+        bytesRedisTemplate.opsForValue().set(key, bytes, time, unit);
     }
 
+    // 回填空值（应对缓存穿透）
+    private void setNull(String key) {
+        bytesRedisTemplate.opsForValue().set(key, NULL_BYTES, CACHE_NULL_TTL, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 更新逻辑过期的缓存，同时清理所有节点上的本地副本
+     */
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit seconds) {
+        writeLogical(key, value, time, null);
+        evictLocal(key);
+    }
+
+    /**
+     * 逻辑过期数据的重建只清理本节点的副本：其他节点的副本在原来的逻辑过期时间之前仍然有效，过期后会重新读取 Redis
+     *
+     * @param rebuildCost 本次重建缓存的耗时（毫秒），用于提前刷新时计算概率
+     */
+    private void writeLogical(String key, Object value, Long time, Long rebuildCost) {
         //封装逻辑过期
         RedisData redisData = new RedisData();
         redisData.setData(value);
         redisData.setExpireTime(LocalDateTime.now().plusSeconds(time));
+        redisData.setRebuildCost(rebuildCost);
         //写入redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        byte[] bytes = cacheCodec.encodeLogical(redisData);
+        cacheMetrics.payload(key, "write", bytes.length);
+        bytesRedisTemplate.opsForValue().set(key, bytes);
+        localRemove(key);
+    }
+
+    /**
+     * 批量写入逻辑过期的缓存（用于缓存预热），通过 pipeline 一次性写入 Redis。
+     * 只写入 Redis 中还不存在的 key（SET NX），不会覆盖数据更新时写入的较新的值；
+     * 不存在的 key 在其他节点上也不会有本地副本，所以不需要发布失效消息
+     *
+     * @return 实际写入的 key 数
+     */
+    public int setAllIfAbsentWithLogicalExpire(Map<String, ?> values, Long time, TimeUnit unit) {
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(time));
+        Map<byte[], byte[]> encoded = new HashMap<>(values.size());
+        values.forEach((key, value) -> {
+            RedisData redisData = new RedisData();
+            redisData.setData(value);
+            redisData.setExpireTime(expireTime);
+            byte[] bytes = cacheCodec.encodeLogical(redisData);
+            cacheMetrics.payload(key, "write", bytes.length);
+            encoded.put(key.getBytes(StandardCharsets.UTF_8), bytes);
+        });
+        List<Object> results = bytesRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            encoded.forEach((key, value) -> connection.stringCommands()
+                    .set(key, value, Expiration.persistent(), RedisStringCommands.SetOption.ifAbsent()));
+            return null;
+        });
+        return (int) results.stream().filter(Boolean.TRUE::equals).count();
+    }
+
+    /**
+     * 删除缓存，同时清理所有节点上的本地副本
+     */
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        evictLocal(key);
+    }
+
+    // 清理本地副本，并通过 pub/sub 通知其他节点（只在数据真正更新或删除时调用）
+    private void evictLocal(String key) {
+        localRemove(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, NODE_ID + "|" + key);
     }
 
     public <R, ID> R get(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
-        // 1. 查 Redis cache
+        // 0. 布隆过滤器判定不存在，直接返回
+        if (!mightExist(keyPrefix, id)) {
+            return null;
+        }
         String key = keyPrefix + id;
-        String json = stringRedisTemplate.opsForValue().get(key);
+        // 1. 查本地缓存和 Redis cache
+        Object cached = lookup(key, type, unit.toMillis(time));
 
         // 2. 判断 cache 是否命中
-        if (StrUtil.isNotBlank(json)) {
-            // 命中有效数据，返回成功
-            return JSONUtil.toBean(json, type);
-        }
-        if (json != null) {
-            // 命中无效数据，返回错误
-            return null;
+        if (cached != null) {
+            // 命中有效数据返回成功，命中无效数据返回 null
+            return unwrap(cached, type);
         }
 
         // 3. cache 未命中，查数据库
-        R r = dbFallback.apply(id);
+        cacheMetrics.request(key, CacheMetrics.MISS, CacheMetrics.REDIS);
+        R r = load(key, id, dbFallback);
 
         // 4. 判断 数据库 是否命中
         if (r == null) {
             // 未命中，写入一个空对象（应对缓存穿透），报错
-            this.set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            setNull(key);
             return null;
         }
 
         // 5. 命中，将数据写入 cache
-        this.set(key, r, time, unit);
+        write(key, r, time, unit);
+        localPut(key, r, unit.toMillis(time));
         return r;
     }
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
-    public <R, ID> R getWithLogicalExpire(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
-        // 1. 查 Redis cache
+    /**
+     * 通过互斥锁应对缓存击穿，通过缓存空对象应对缓存穿透。
+     * 本节点内同一个 key 的并发未命中只会有一个线程去重建，其余线程等待同一个 future；
+     * 其他节点正在重建时，不再休眠重试，而是等待 "rebuilt" 通知后重新读取缓存。
+     */
+    public <R, ID> R getWithMutex(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        // 0. 布隆过滤器判定不存在，直接返回
+        if (!mightExist(keyPrefix, id)) {
+            return null;
+        }
         String key = keyPrefix + id;
-        String json = stringRedisTemplate.opsForValue().get(key);
+        // 1. 查本地缓存和 Redis cache
+        Object cached = lookup(key, type, unit.toMillis(time));
+        if (cached != null) {
+            return unwrap(cached, type);
+        }
 
-        // 2. 判断 cache 是否命中
-        if (StrUtil.isBlank(json)) {
-            // 3. 未命中，直接结束 (热点数据，在一开始手动添加到 Redis 中）
+        // 2. 未命中，同一个 key 只允许一个线程去加载
+        cacheMetrics.request(key, CacheMetrics.MISS, CacheMetrics.REDIS);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlightLoads.putIfAbsent(key, future);
+        if (existing != null) {
+            // 已经有线程在加载，等待它的结果；等待有上限（加载线程最多等锁 LOCK_SHOP_TTL 再查数据库），超时后自己查
+            try {
+                return unwrap(existing.get(2 * LOCK_SHOP_TTL, TimeUnit.SECONDS), type);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待缓存加载被中断, key: " + key, e);
+            } catch (TimeoutException e) {
+                log.warn("等待缓存加载超时，直接查询, key: {}", key);
+                Object reloaded = lookup(key, type, unit.toMillis(time));
+                return reloaded != null ? unwrap(reloaded, type) : load(key, id, dbFallback);
+            }
+        }
+
+        try {
+            Object loaded = loadWithMutex(key, id, type, dbFallback, time, unit);
+            future.complete(loaded);
+            return unwrap(loaded, type);
+        } catch (Throwable e) {
+            // Error 也要通知等待中的线程，否则它们会一直等下去
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(key, future);
+        }
+    }
+
+    private <R, ID> Object loadWithMutex(String key, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        long ttlMillis = unit.toMillis(time);
+        // 1. 尝试获取分布式锁
+        String lockKey = LOCK_CACHE_KEY + key;
+        if (tryLock(lockKey, LOCK_SHOP_TTL)) {
+            try {
+                // 1.1 获取锁成功，再检查一次缓存，可能刚刚被其他节点重建
+                Object cached = lookup(key, type, ttlMillis);
+                if (cached != null) {
+                    return cached;
+                }
+                // 1.2 查数据库，更新缓存，并通知等待中的节点
+                R r = load(key, id, dbFallback);
+                if (r == null) {
+                    setNull(key);
+                } else {
+                    write(key, r, time, unit);
+                    localPut(key, r, ttlMillis);
+                }
+                stringRedisTemplate.convertAndSend(CACHE_REBUILT_CHANNEL, key);
+                return r == null ? NULL_VALUE : r;
+            } finally {
+                unLock(lockKey);
+            }
+        }
+
+        // 2. 获取锁失败，说明其他节点正在重建，等待 "rebuilt" 通知
+        CompletableFuture<Void> signal = rebuildSignals.computeIfAbsent(key, k -> new CompletableFuture<>());
+        try {
+            // 2.1 注册等待后再查一次，避免通知在注册之前就已经发出
+            Object cached = lookup(key, type, ttlMillis);
+            if (cached != null) {
+                return cached;
+            }
+            signal.get(LOCK_SHOP_TTL, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("等待缓存重建超时, key: {}", key);
+        } finally {
+            rebuildSignals.remove(key, signal);
+        }
+
+        // 3. 重建完成，重新读取缓存；仍未命中（超时或已被删除）则直接查数据库
+        Object cached = lookup(key, type, ttlMillis);
+        if (cached != null) {
+            return cached;
+        }
+        R r = load(key, id, dbFallback);
+        return r == null ? NULL_VALUE : r;
+    }
+
+    // 查数据库，并记录耗时
+    private <R, ID> R load(String key, ID id, Function<ID, R> dbFallback) {
+        long begin = System.nanoTime();
+        try {
+            return dbFallback.apply(id);
+        } finally {
+            cacheMetrics.load(key, System.nanoTime() - begin);
+        }
+    }
+
+    /**
+     * 依次查本地缓存和 Redis，命中有效数据返回对象，命中空值返回 NULL_VALUE，未命中返回 null
+     */
+    private <R> Object lookup(String key, Class<R> type, long ttlMillis) {
+        // 1. 查本地缓存
+        Object local = localGet(key);
+        if (local == NULL_VALUE || type.isInstance(local)) {
+            cacheMetrics.request(key, local == NULL_VALUE ? CacheMetrics.NULL_HIT : CacheMetrics.HIT, CacheMetrics.LOCAL);
+            return local;
+        }
+
+        // 2. 查 Redis cache
+        byte[] bytes = bytesRedisTemplate.opsForValue().get(key);
+        if (bytes != null && bytes.length > 0) {
+            // 命中有效数据，写入本地缓存
+            cacheMetrics.request(key, CacheMetrics.HIT, CacheMetrics.REDIS);
+            cacheMetrics.payload(key, "read", bytes.length);
+            R r = cacheCodec.decode(bytes, type);
+            localPut(key, r, ttlMillis);
+            return r;
+        }
+        if (bytes != null) {
+            // 命中无效数据
+            cacheMetrics.request(key, CacheMetrics.NULL_HIT, CacheMetrics.REDIS);
+            localPut(key, NULL_VALUE, TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL));
+            return NULL_VALUE;
+        }
+        return null;
+    }
+
+    private static <R> R unwrap(Object cached, Class<R> type) {
+        return cached == NULL_VALUE ? null : type.cast(cached);
+    }
+
+    /**
+     * 批量查询：先查本地缓存，剩下的 key 用一次 MGET 查 Redis，未命中的 id 用一次批量查询查数据库，
+     * 再通过 pipeline 一次性写回 Redis。返回结果按 ids 的顺序排列，不存在的 id 不会出现在结果中。
+     */
+    public <R, ID> Map<ID, R> getAll(String keyPrefix, Collection<ID> ids, Class<R> type,
+                                     Function<Collection<ID>, Map<ID, R>> dbBatchFallback, Long time, TimeUnit unit) {
+        Map<ID, R> result = new LinkedHashMap<>(ids.size());
+        if (ids.isEmpty()) {
+            return result;
+        }
+
+        // 1. 查本地缓存（布隆过滤器判定不存在的 id 直接跳过）
+        List<ID> remoteIds = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            if (!mightExist(keyPrefix, id)) {
+                continue;
+            }
+            Object local = localGet(keyPrefix + id);
+            if (local == NULL_VALUE) {
+                cacheMetrics.request(keyPrefix, CacheMetrics.NULL_HIT, CacheMetrics.LOCAL);
+                continue;
+            }
+            if (type.isInstance(local)) {
+                cacheMetrics.request(keyPrefix, CacheMetrics.HIT, CacheMetrics.LOCAL);
+                result.put(id, type.cast(local));
+            } else {
+                remoteIds.add(id);
+            }
+        }
+        if (remoteIds.isEmpty()) {
+            return sortByIds(ids, result);
+        }
+
+        // 2. 一次 MGET 查 Redis
+        List<String> keys = new ArrayList<>(remoteIds.size());
+        remoteIds.forEach(id -> keys.add(keyPrefix + id));
+        List<byte[]> values = bytesRedisTemplate.opsForValue().multiGet(keys);
+        List<ID> missIds = new ArrayList<>();
+        for (int i = 0; i < remoteIds.size(); i++) {
+            byte[] bytes = values == null ? null : values.get(i);
+            if (bytes != null && bytes.length > 0) {
+                // 命中有效数据
+                cacheMetrics.request(keyPrefix, CacheMetrics.HIT, CacheMetrics.REDIS);
+                cacheMetrics.payload(keyPrefix, "read", bytes.length);
+                R r = cacheCodec.decode(bytes, type);
+                result.put(remoteIds.get(i), r);
+                localPut(keys.get(i), r, unit.toMillis(time));
+            } else if (bytes != null) {
+                // 命中无效数据
+                cacheMetrics.request(keyPrefix, CacheMetrics.NULL_HIT, CacheMetrics.REDIS);
+                localPut(keys.get(i), NULL_VALUE, TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL));
+            } else {
+                cacheMetrics.request(keyPrefix, CacheMetrics.MISS, CacheMetrics.REDIS);
+                missIds.add(remoteIds.get(i));
+            }
+        }
+        if (missIds.isEmpty()) {
+            return sortByIds(ids, result);
+        }
+
+        // 3. 未命中的 id 一次性查数据库
+        Map<ID, R> loaded = load(keyPrefix, missIds, dbBatchFallback);
+        if (loaded == null) {
+            loaded = Collections.emptyMap();
+        }
+
+        // 4. 通过 pipeline 写回 Redis，数据库中不存在的 id 写入空值（应对缓存穿透）
+        Map<String, byte[]> toWrite = new HashMap<>(missIds.size());
+        for (ID id : missIds) {
+            R r = loaded.get(id);
+            toWrite.put(keyPrefix + id, r == null ? NULL_BYTES : cacheCodec.encode(r));
+            if (r != null) {
+                cacheMetrics.payload(keyPrefix, "write", toWrite.get(keyPrefix + id).length);
+                result.put(id, r);
+                localPut(keyPrefix + id, r, unit.toMillis(time));
+            }
+        }
+        Expiration valueTtl = Expiration.from(time, unit);
+        Expiration nullTtl = Expiration.from(CACHE_NULL_TTL, TimeUnit.MINUTES);
+        bytesRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            toWrite.forEach((key, bytes) -> connection.stringCommands().set(key.getBytes(StandardCharsets.UTF_8), bytes,
+                    bytes.length == 0 ? nullTtl : valueTtl, RedisStringCommands.SetOption.upsert()));
             return null;
+        });
+        return sortByIds(ids, result);
+    }
+
+    // 按调用方传入的 id 顺序重新排列结果
+    private static <R, ID> Map<ID, R> sortByIds(Collection<ID> ids, Map<ID, R> found) {
+        Map<ID, R> sorted = new LinkedHashMap<>(found.size());
+        for (ID id : ids) {
+            R r = found.get(id);
+            if (r != null) {
+                sorted.put(id, r);
+            }
+        }
+        return sorted;
+    }
+
+    // 查本地缓存，同时记录访问用于热点探测
+    private Object localGet(String key) {
+        hotKeyDetector.record(key);
+        return localCache.get(key);
+    }
+
+    // 写本地缓存，热点 key 的有效期更长（数据更新时会通过失效消息清掉），都不超过 Redis 中的有效期
+    private void localPut(String key, Object value, long redisTtlMillis) {
+        long localTtl = hotKeyDetector.isHot(key) ? HOT_KEY_LOCAL_TTL : LOCAL_CACHE_TTL;
+        localCache.put(key, value, Math.min(TimeUnit.SECONDS.toMillis(localTtl), redisTtlMillis));
+    }
+
+    private void localRemove(String key) {
+        localCache.remove(key);
+    }
+
+    public <R, ID> R getWithLogicalExpire(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        return getWithLogicalExpire(keyPrefix, id, type, dbFallback, time, unit, 0);
+    }
+
+    /**
+     * 逻辑过期 + 提前刷新（XFetch）：beta > 0 时，未过期的请求也可能提前触发后台重建，
+     * 上次重建越慢、离过期越近，触发的概率越大，避免热点 key 在同一时刻集中过期。beta <= 0 时不提前刷新。
+     */
+    public <R, ID> R getWithLogicalExpire(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                                          Long time, TimeUnit unit, double beta) {
+        // 布隆过滤器判定不存在，直接返回
+        if (!mightExist(keyPrefix, id)) {
+            return null;
+        }
+        String key = keyPrefix + id;
+        RedisData redisData;
+        String level;
+        // 0. 查本地缓存，本地副本未逻辑过期时直接使用；过期了则以 Redis 中的数据为准
+        Object local = localGet(key);
+        if (local instanceof RedisData && type.isInstance(((RedisData) local).getData())
+                && ((RedisData) local).getExpireTime().isAfter(LocalDateTime.now())) {
+            redisData = (RedisData) local;
+            level = CacheMetrics.LOCAL;
+        } else {
+            level = CacheMetrics.REDIS;
+            // 1. 查 Redis cache
+            byte[] bytes = bytesRedisTemplate.opsForValue().get(key);
+
+            // 2. 判断 cache 是否命中
+            if (bytes == null || bytes.length == 0) {
+                // 3. 未命中，直接结束 (热点数据，在一开始手动添加到 Redis 中）
+                cacheMetrics.request(key, CacheMetrics.MISS, CacheMetrics.REDIS);
+                return null;
+            }
+            cacheMetrics.payload(key, "read", bytes.length);
+            // 4. 命中，反序列化为对象（二进制格式只解析一次）
+            redisData = cacheCodec.decodeLogical(bytes, type);
+            if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+                // 未过期，放入本地缓存（保存反序列化后的对象），本地副本不超过逻辑过期时间
+                localPut(key, redisData, ChronoUnit.MILLIS.between(LocalDateTime.now(), redisData.getExpireTime()));
+            }
         }
-        // 4. 命中，先反序列化 JSON 为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        LocalDateTime expireTime = redisData.getExpireTime();
+        R r = type.cast(redisData.getData());
+        boolean stale = !redisData.getExpireTime().isAfter(LocalDateTime.now());
+        cacheMetrics.request(key, stale ? CacheMetrics.STALE_HIT : CacheMetrics.HIT, level);
 
-        // 5. 判断是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
+        // 5. 判断是否过期（或需要提前刷新）
+        if (!needsRebuild(redisData, beta)) {
             // 5.1 未过期，直接返回数据
             return r;
         }
 
         // 5.2 过期，需要缓存重建
-        // 6. 缓存重建
+        // 6. 缓存重建，本节点已经在重建这个 key 时，不再去抢锁
+        if (cacheRebuildExecutor.isPending(key)) {
+            return r;
+        }
         // 6.1 尝试获取锁
         String lockKey = LOCK_SHOP_KEY + id;
         boolean isLock = tryLock(lockKey, LOCK_SHOP_TTL);
 
         // 6.2 判断是否获取成功
         if (isLock) {
-            // 6.3 获取锁成功，开启独立线程重建缓存
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
+            // 6.3 获取锁成功，交给重建线程池重建缓存（异常由线程池记录）
+            boolean submitted = cacheRebuildExecutor.submit(key, () -> {
                 try {
-                    // 查数据库
-                    R newR = dbFallback.apply(id);
+                    // 查数据库，记录重建耗时
+                    long begin = System.nanoTime();
+                    R newR = load(key, id, dbFallback);
+                    long cost = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
                     // 更新缓存
-                    this.setWithLogicalExpire(key, newR, time, TimeUnit.SECONDS);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+                    writeLogical(key, newR, time, cost);
                 } finally {
                     // 释放锁
                     unLock(lockKey);
                 }
             });
+            if (!submitted) {
+                // 重建队列已满，放弃本次重建，释放锁让后续请求重试
+                unLock(lockKey);
+            }
         }
 
         // 6.4 获取锁失败，直接返回数据（过期数据）
         return r;
     }
 
+    // XFetch: now - rebuildCost * beta * ln(rand()) >= expireTime 时重建
+    private static boolean needsRebuild(RedisData redisData, double beta) {
+        long now = System.currentTimeMillis();
+        long expireAt = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (now >= expireAt) {
+            return true;
+        }
+        Long rebuildCost = redisData.getRebuildCost();
+        if (beta <= 0 || rebuildCost == null || rebuildCost <= 0) {
+            return false;
+        }
+        double gap = -rebuildCost * beta * Math.log(ThreadLocalRandom.current().nextDouble());
+        return now + gap >= expireAt;
+    }
+
     public boolean tryLock(String key, Long timeout) {
         Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", timeout, TimeUnit.SECONDS);
         return BooleanUtil.isTrue(flag);
@@ -0,0 +1,22 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存值的编解码器，负责对象与 Redis 中字节之间的转换。
+ * 空字节数组表示"数据库中不存在"的空值，由 CacheClient 自行处理，不会交给编解码器。
+ */
+public interface CacheCodec {
+
+    byte[] encode(Object value);
+
+    <T> T decode(byte[] bytes, Class<T> type);
+
+    /**
+     * 编码逻辑过期的缓存数据
+     */
+    byte[] encodeLogical(RedisData redisData);
+
+    /**
+     * 解码逻辑过期的缓存数据，返回的 RedisData 中 data 已经是 type 类型的对象
+     */
+    <T> RedisData decodeLogical(byte[] bytes, Class<T> type);
+}
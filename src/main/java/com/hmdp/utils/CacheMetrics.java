@@ -0,0 +1,70 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存指标，全部按 key 前缀（最后一个 ':' 及之前的部分，如 cache:shop:）打标签：
+ * <ul>
+ *     <li>cache.requests：请求次数，result = hit / null_hit / stale_hit / miss，level = local / redis</li>
+ *     <li>cache.load：未命中或过期后查数据库重建的耗时（次数即重建次数）</li>
+ *     <li>cache.payload.size：Redis 中缓存值的字节数，op = read / write</li>
+ * </ul>
+ */
+@Component
+public class CacheMetrics {
+
+    public static final String HIT = "hit";
+    public static final String NULL_HIT = "null_hit";
+    public static final String STALE_HIT = "stale_hit";
+    public static final String MISS = "miss";
+    public static final String LOCAL = "local";
+    public static final String REDIS = "redis";
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    // 缓存已注册的指标，避免每次都到 registry 中查找
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    public void request(String key, String result, String level) {
+        String prefix = prefixOf(key);
+        counters.computeIfAbsent(prefix + '|' + result + '|' + level, k -> Counter.builder("cache.requests")
+                .tag("prefix", prefix)
+                .tag("result", result)
+                .tag("level", level)
+                .register(meterRegistry)).increment();
+    }
+
+    public void load(String key, long nanos) {
+        String prefix = prefixOf(key);
+        timers.computeIfAbsent(prefix, k -> Timer.builder("cache.load")
+                .description("缓存未命中或过期后查数据库重建的耗时")
+                .tag("prefix", prefix)
+                .publishPercentileHistogram()
+                .register(meterRegistry)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void payload(String key, String op, int bytes) {
+        String prefix = prefixOf(key);
+        summaries.computeIfAbsent(prefix + '|' + op, k -> DistributionSummary.builder("cache.payload.size")
+                .baseUnit("bytes")
+                .tag("prefix", prefix)
+                .tag("op", op)
+                .publishPercentileHistogram()
+                .register(meterRegistry)).record(bytes);
+    }
+
+    private static String prefixOf(String key) {
+        return key.substring(0, key.lastIndexOf(':') + 1);
+    }
+}
@@ -0,0 +1,108 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 缓存重建线程池：
+ * 1. 同一个 key 同时只会有一个待执行/执行中的重建任务；
+ * 2. 队列有界，队列满时直接丢弃重建任务（调用方继续返回旧数据），并计数；
+ * 3. 任务中的异常会被记录下来，不会悄悄丢失；
+ * 4. 应用关闭时等待已提交的任务执行完毕；
+ * 5. 暴露队列长度、重建耗时等指标。
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+
+    private final ThreadPoolExecutor executor;
+    // 待执行或执行中的 key，用于去重
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final Timer rebuildTimer;
+    private final Counter rejectedCounter;
+    private final Counter failedCounter;
+
+    public CacheRebuildExecutor(MeterRegistry meterRegistry) {
+        AtomicInteger threadNo = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                CACHE_REBUILD_THREADS, CACHE_REBUILD_THREADS,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(CACHE_REBUILD_QUEUE_CAPACITY),
+                r -> new Thread(r, "cache-rebuild-" + threadNo.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("cache.rebuild.queue.depth", executor, e -> e.getQueue().size())
+                .description("等待执行的缓存重建任务数")
+                .register(meterRegistry);
+        Gauge.builder("cache.rebuild.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("正在执行的缓存重建任务数")
+                .register(meterRegistry);
+        this.rebuildTimer = Timer.builder("cache.rebuild.latency")
+                .description("缓存重建耗时")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("cache.rebuild.rejected")
+                .description("队列已满被丢弃的缓存重建任务数")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("cache.rebuild.failed")
+                .description("执行失败的缓存重建任务数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 该 key 是否已经有待执行或执行中的重建任务
+     */
+    public boolean isPending(String key) {
+        return pendingKeys.contains(key);
+    }
+
+    /**
+     * 提交重建任务
+     * @return true: 已提交；false: 该 key 已有重建任务，或队列已满被丢弃
+     */
+    public boolean submit(String key, Runnable task) {
+        if (!pendingKeys.add(key)) {
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    rebuildTimer.record(task);
+                } catch (Exception e) {
+                    failedCounter.increment();
+                    log.error("缓存重建失败, key: {}", key, e);
+                } finally {
+                    pendingKeys.remove(key);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            // 队列已满（或正在关闭），放弃本次重建，调用方继续返回旧数据
+            pendingKeys.remove(key);
+            rejectedCounter.increment();
+            log.warn("缓存重建队列已满，放弃重建, key: {}", key);
+            return false;
+        }
+    }
+
+    @PreDestroy
+    private void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(CACHE_REBUILD_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+            log.warn("缓存重建任务未能在 {} 秒内执行完毕，强制关闭", CACHE_REBUILD_SHUTDOWN_TIMEOUT);
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.hmdp.utils;
+
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 热点 key 探测：对读请求按比例采样，用滑动窗口（每秒一个桶）统计访问次数，
+ * 每秒重新计算一次窗口内访问次数超过阈值的 top-K 个 key 作为当前的热点集合。
+ */
+@Component
+public class HotKeyDetector {
+
+    // 环形数组，每个桶统计一秒内的采样次数
+    private final ConcurrentHashMap<String, LongAdder>[] buckets;
+    private volatile int current = 0;
+    // 当前的热点 key 及其窗口内的估算访问次数（已按采样率放大），按次数降序
+    private volatile Map<String, Long> hotKeys = Collections.emptyMap();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "hot-key-detector");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @SuppressWarnings("unchecked")
+    public HotKeyDetector() {
+        buckets = new ConcurrentHashMap[HOT_KEY_WINDOW_SECONDS];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    @PostConstruct
+    private void init() {
+        scheduler.scheduleAtFixedRate(this::rotate, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 记录一次读请求（按采样率采样）
+     */
+    public void record(String key) {
+        if (ThreadLocalRandom.current().nextInt(HOT_KEY_SAMPLE_RATE) != 0) {
+            return;
+        }
+        ConcurrentHashMap<String, LongAdder> bucket = buckets[current];
+        LongAdder counter = bucket.get(key);
+        if (counter == null) {
+            // 限制每个桶跟踪的 key 数量，避免大量冷 key 占用内存
+            if (bucket.size() >= HOT_KEY_MAX_TRACKED) {
+                return;
+            }
+            counter = bucket.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    public boolean isHot(String key) {
+        return hotKeys.containsKey(key);
+    }
+
+    public Map<String, Long> getHotKeys() {
+        return hotKeys;
+    }
+
+    // 汇总窗口内所有桶，重新计算热点集合，然后清空最旧的桶作为新的当前桶
+    private void rotate() {
+        Map<String, Long> counts = new HashMap<>();
+        for (ConcurrentHashMap<String, LongAdder> bucket : buckets) {
+            bucket.forEach((key, adder) -> counts.merge(key, adder.sum(), Long::sum));
+        }
+        Map<String, Long> hot = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .map(e -> new AbstractMap.SimpleEntry<>(e.getKey(), e.getValue() * HOT_KEY_SAMPLE_RATE))
+                .filter(e -> e.getValue() >= HOT_KEY_THRESHOLD)
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(HOT_KEY_TOP_K)
+                .forEach(e -> hot.put(e.getKey(), e.getValue()));
+        hotKeys = Collections.unmodifiableMap(hot);
+
+        int next = (current + 1) % buckets.length;
+        buckets[next].clear();
+        current = next;
+    }
+}
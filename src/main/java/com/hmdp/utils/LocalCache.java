@@ -0,0 +1,80 @@
+package com.hmdp.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 进程内的近端缓存（一级缓存），放在 Redis 前面挡住热点数据的读请求。
+ * 每个条目有自己的过期时间，总条目数有上限，超出上限时淘汰最久没有访问的条目（LRU），每次写入的开销是 O(1)。
+ */
+public class LocalCache {
+
+    // 按访问顺序排列，最久没有访问的条目在最前面
+    private final LinkedHashMap<String, Entry> map;
+
+    public LocalCache(int maxSize) {
+        this.map = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public Object get(String key) {
+        synchronized (map) {
+            Entry entry = map.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired()) {
+                // 过期的条目顺手删掉，避免下次再判断
+                map.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    public void put(String key, Object value, long ttlMillis) {
+        if (value == null || ttlMillis <= 0) {
+            return;
+        }
+        Entry entry = new Entry(value, System.currentTimeMillis() + ttlMillis);
+        synchronized (map) {
+            map.put(key, entry);
+        }
+    }
+
+    public void remove(String key) {
+        synchronized (map) {
+            map.remove(key);
+        }
+    }
+
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long expireAt;
+
+        private Entry(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expireAt;
+        }
+    }
+}
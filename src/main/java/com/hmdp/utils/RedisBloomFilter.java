@@ -0,0 +1,155 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * 布隆过滤器，用于应对缓存穿透：判定为不存在的 id 一定不存在，可以直接在内存中拒绝。
+ * 位图保存在 Redis 中（多个节点共享），本地保存一份镜像，查询时只查本地镜像，不产生网络请求。
+ */
+public class RedisBloomFilter {
+
+    private final String key;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long numBits;
+    private final int numHashFunctions;
+    // 本地位图镜像
+    private final AtomicLongArray bits;
+
+    /**
+     * @param key                Redis 中位图的 key
+     * @param expectedInsertions 预计元素数量
+     * @param fpp                期望的误判率
+     */
+    public RedisBloomFilter(String key, long expectedInsertions, double fpp, StringRedisTemplate stringRedisTemplate) {
+        this.key = key;
+        this.stringRedisTemplate = stringRedisTemplate;
+        // m = -n * ln(p) / (ln2)^2, k = m / n * ln2
+        long m = (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.numBits = Math.max(64, (m + 63) / 64 * 64);
+        this.numHashFunctions = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+        this.bits = new AtomicLongArray((int) (numBits / 64));
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 判断元素是否可能存在，只查本地镜像
+     */
+    public boolean mightContain(Object value) {
+        for (long offset : offsets(value)) {
+            if ((bits.get((int) (offset >>> 6)) & (1L << (offset & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 添加元素，同时写入本地镜像和 Redis 位图，并通知其他节点更新本地镜像
+     */
+    public void add(Object value) {
+        long[] offsets = offsets(value);
+        setLocal(offsets);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (long offset : offsets) {
+                conn.setBit(key, offset, true);
+            }
+            conn.publish(RedisConstants.BLOOM_ADD_CHANNEL, key + "|" + value);
+            return null;
+        });
+    }
+
+    /**
+     * 只写入本地镜像（其他节点已经写过 Redis，通过 pub/sub 通知过来时使用）
+     */
+    public void addLocal(Object value) {
+        setLocal(offsets(value));
+    }
+
+    /**
+     * 用全量数据重建：先把全量元素的位图按位或到 Redis 中（不会丢失其他节点刚写入的位），
+     * 再把合并后的 Redis 位图加载到本地镜像
+     */
+    public void rebuild(Collection<?> values) {
+        Iterator<Collection<?>> batches = Collections.<Collection<?>>singletonList(values).iterator();
+        rebuild(() -> batches.hasNext() ? batches.next() : Collections.emptyList());
+    }
+
+    /**
+     * 分批重建：反复调用 nextBatch 取下一批元素（如按 id 分页查询数据库），返回空集合时结束，
+     * 全量数据不需要一次加载到内存
+     */
+    public void rebuild(Supplier<? extends Collection<?>> nextBatch) {
+        // 1. 在本地计算全量位图
+        byte[] bitmap = new byte[(int) (numBits / 8)];
+        for (Collection<?> values = nextBatch.get(); !values.isEmpty(); values = nextBatch.get()) {
+            for (Object value : values) {
+                for (long offset : offsets(value)) {
+                    // Redis 位图中 offset 0 是第一个字节的最高位
+                    bitmap[(int) (offset >>> 3)] |= (byte) (0x80 >>> (offset & 7));
+                }
+            }
+        }
+
+        // 2. 写入临时 key，按位或合并到正式 key 中，再读回合并结果
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        // 临时 key 以正式 key 作为 hash tag，集群模式下两者在同一个 slot，才能执行 BITOP
+        byte[] tmpKey = ("{" + key + "}:tmp").getBytes(StandardCharsets.UTF_8);
+        byte[] merged = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> {
+            connection.stringCommands().set(tmpKey, bitmap);
+            connection.stringCommands().bitOp(RedisStringCommands.BitOperation.OR, rawKey, rawKey, tmpKey);
+            connection.keyCommands().del(tmpKey);
+            return connection.stringCommands().get(rawKey);
+        });
+
+        // 3. 加载到本地镜像
+        load(merged == null ? bitmap : merged);
+    }
+
+    private void load(byte[] bitmap) {
+        for (int i = 0; i < bits.length(); i++) {
+            long word = 0;
+            for (int bit = 0; bit < 64; bit++) {
+                long offset = (long) i * 64 + bit;
+                int byteIdx = (int) (offset >>> 3);
+                if (byteIdx < bitmap.length && (bitmap[byteIdx] & (0x80 >>> (offset & 7))) != 0) {
+                    word |= 1L << bit;
+                }
+            }
+            bits.set(i, word);
+        }
+    }
+
+    private void setLocal(long[] offsets) {
+        for (long offset : offsets) {
+            long mask = 1L << (offset & 63);
+            bits.getAndAccumulate((int) (offset >>> 6), mask, (a, b) -> a | b);
+        }
+    }
+
+    // 双重哈希：g_i(x) = h1(x) + i * h2(x)
+    private long[] offsets(Object value) {
+        long[] hash = MurmurHash.hash128(value.toString().getBytes(StandardCharsets.UTF_8));
+        long[] offsets = new long[numHashFunctions];
+        long combined = hash[0];
+        for (int i = 0; i < numHashFunctions; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % numBits;
+            combined += hash[1];
+        }
+        return offsets;
+    }
+}
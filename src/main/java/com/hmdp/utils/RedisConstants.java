@@ -10,15 +10,138 @@ public class RedisConstants {
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    // 逻辑过期缓存提前刷新（XFetch）的 beta 参数，越大越倾向于提前刷新，0 表示关闭
+    public static final double CACHE_EARLY_REFRESH_BETA = 1.0;
+    // 列表页使用的店铺缓存（普通 TTL），与详情页的逻辑过期缓存分开存放
+    public static final String CACHE_SHOP_LIST_KEY = "cache:shop:list:";
+
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
 
     public static final String CACHE_SHOPTYPE_KEY = "cache:shoptype:";
 
+    // 缓存值超过这个大小（字节）时压缩
+    public static final int CACHE_COMPRESS_THRESHOLD = 1024;
+
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String CACHE_REBUILT_CHANNEL = "cache:rebuilt";
+    public static final Long LOCAL_CACHE_TTL = 10L;
+    public static final int LOCAL_CACHE_MAX_SIZE = 1000;
+
+    // 热点 key 探测：滑动窗口长度（秒）、采样率（1/N）、阈值（窗口内估算访问次数）、热点集合大小
+    public static final int HOT_KEY_WINDOW_SECONDS = 10;
+    public static final int HOT_KEY_SAMPLE_RATE = 10;
+    public static final long HOT_KEY_THRESHOLD = 1000L;
+    public static final int HOT_KEY_TOP_K = 100;
+    public static final int HOT_KEY_MAX_TRACKED = 10000;
+    // 热点 key 在本地缓存中的有效期（秒），长于普通 key 的 LOCAL_CACHE_TTL
+    public static final Long HOT_KEY_LOCAL_TTL = 60L;
+
+    public static final String BLOOM_SHOP_KEY = "bloom:shop";
+    public static final long BLOOM_SHOP_EXPECTED_INSERTIONS = 1000000L;
+    public static final double BLOOM_SHOP_FPP = 0.01;
+    // 重建布隆过滤器时每次从数据库读取的 id 数
+    public static final int BLOOM_REBUILD_BATCH_SIZE = 500;
+    public static final String BLOOM_ADD_CHANNEL = "bloom:add";
+
+    // 缓存重建线程池：线程数、队列容量、关闭时等待的秒数
+    public static final int CACHE_REBUILD_THREADS = 10;
+    public static final int CACHE_REBUILD_QUEUE_CAPACITY = 1000;
+    public static final long CACHE_REBUILD_SHUTDOWN_TIMEOUT = 10L;
+
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final String LOCK_CACHE_KEY = "lock:";
 
+    // 库存，完整的 key 为 seckill:stock:{voucherId}（见 SeckillKeys）；旧版本不带 hash tag（seckill:stock:voucherId），启动时迁移
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_STOCK_MIGRATION_LOCK = "seckill:stock:migration";
+    // 已下单的用户：bitmap，第 userId 位为 1 表示已下单（用户 id 是连续自增的，比字符串集合省内存），
+    // 已下单用户数记在 seckill:buyers:{voucherId}:count 中，完整的 key 见 SeckillKeys
+    public static final String SECKILL_BUYERS_KEY = "seckill:buyers:";
+    // bitmap 的最大偏移量（Redis 限制为 2^32 - 1），用户 id 超过时不能参与秒杀
+    public static final long SECKILL_BUYERS_MAX_USER_ID = (1L << 32) - 1;
+    // 旧版本的已下单用户集合（set，seckill:order:{voucherId} 或 seckill:order:voucherId），启动时迁移到 bitmap 后删除
+    public static final String SECKILL_LEGACY_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_BUYERS_MIGRATION_LOCK = "seckill:buyers:migration";
+    // 秒杀时间窗口，值为 "开始时间:结束时间"（epoch 秒）
+    public static final String SECKILL_WINDOW_KEY = "seckill:window:";
+    // 秒杀准入限流：配置（hash：rate、burst）和 GCRA 状态，完整的 key 见 SeckillKeys
+    public static final String SECKILL_LIMIT_KEY = "seckill:limit:";
+    public static final String SECKILL_GCRA_KEY = "seckill:gcra:";
+    // 没有配置限流时，每秒放行剩余库存的多少倍，以及最低放行数
+    public static final int SECKILL_ADMISSION_FACTOR = 5;
+    public static final int SECKILL_ADMISSION_MIN_RATE = 10;
+    // 本地令牌桶按剩余库存重新计算速率的间隔（秒）
+    public static final Long SECKILL_ADMISSION_REFRESH_INTERVAL = 1L;
+    // 库存对账：不一致记录（hash，field 为 voucherId），执行间隔（毫秒），每批处理的券数，券结束后继续对账的天数
+    public static final String SECKILL_RECONCILE_KEY = "seckill:reconcile";
+    public static final long SECKILL_RECONCILE_INTERVAL = 60000L;
+    public static final int SECKILL_RECONCILE_BATCH_SIZE = 200;
+    public static final long SECKILL_RECONCILE_GRACE_DAYS = 1L;
+    // 库存对账：上一次对账时缺少订单的用户（set），多个节点只有拿到锁的一个执行对账，锁的有效期（秒）
+    public static final String SECKILL_RECONCILE_MISSING_KEY = "seckill:reconcile:missing:";
+    public static final String SECKILL_RECONCILE_LOCK = "seckill:reconcile";
+    public static final long SECKILL_RECONCILE_LOCK_TTL = 300L;
+    // 库存对账补单：下单超过多久（秒）的订单才补发，订单队列积压超过多少条时不补发（订单可能还在队列中），
+    // 等待补发结果的时间（毫秒），已经补发过的订单（hash，field 为用户 id，值为补发时间）在这段时间内不重复补发
+    public static final long SECKILL_RECONCILE_REPLAY_MIN_AGE = 600L;
+    public static final long SECKILL_RECONCILE_REPLAY_MAX_LAG = 1000L;
+    public static final long SECKILL_RECONCILE_REPLAY_TIMEOUT = 10000L;
+    public static final String SECKILL_RECONCILE_REPLAYED_KEY = "seckill:reconcile:replayed:";
+    // 已下单、还没有落库的订单（hash，field 为用户 id，值为 "时间戳:序列号"），落库或补偿后删除
+    public static final String SECKILL_PENDING_KEY = "seckill:pending:";
+    // 秒杀订单的处理状态，值为 ORDER_STATUS_*，有效期（分钟）
+    public static final String SECKILL_ORDER_STATUS_KEY = "seckill:status:";
+    public static final Long SECKILL_ORDER_STATUS_TTL = 30L;
+    public static final String ORDER_STATUS_PENDING = "0";
+    public static final String ORDER_STATUS_SUCCESS = "1";
+    public static final String ORDER_STATUS_FAILED = "2";
+    // 订单队列（seckill.order.queue）：Redis Stream 的 key 和消费者组，每批最多处理的订单数，
+    // 整批处理失败时的重试次数和首次重试间隔（毫秒，之后翻倍），内存环形队列的容量（2 的幂），关闭时等待落库的时间（秒）
+    public static final String SECKILL_ORDER_STREAM_KEY = "stream.orders";
+    public static final String SECKILL_ORDER_STREAM_GROUP = "voucher-order-group";
+    public static final int SECKILL_ORDER_BATCH_SIZE = 500;
+    public static final int SECKILL_ORDER_MAX_RETRIES = 4;
+    public static final long SECKILL_ORDER_RETRY_INTERVAL = 500L;
+    public static final int SECKILL_ORDER_RING_CAPACITY = 1 << 16;
+    public static final long SECKILL_ORDER_SHUTDOWN_TIMEOUT = 10L;
+    // Redis Stream 消费者：其他消费者（如已经下线的节点）未确认超过多久（毫秒）的订单由本节点认领，认领检查的间隔（毫秒），
+    // 没有未确认订单、空闲超过多久（毫秒）的消费者从消费者组中删除（每个实例的消费者名都不同，重启后旧的消费者不会再出现）
+    public static final long SECKILL_ORDER_CLAIM_IDLE = 60000L;
+    public static final long SECKILL_ORDER_CLAIM_INTERVAL = 30000L;
+    public static final long SECKILL_ORDER_CONSUMER_IDLE = 600000L;
+    // 订单投递线程池的线程数和队列容量：脚本的回调在 Redis 的 IO 线程中执行，发送订单消息要换到这个线程池
+    public static final int SECKILL_ORDER_EXECUTOR_THREADS = 4;
+    public static final int SECKILL_ORDER_EXECUTOR_QUEUE_CAPACITY = 10000;
+    // 投递失败时的补偿线程池的线程数和队列容量
+    public static final int SECKILL_COMPENSATE_THREADS = 2;
+    public static final int SECKILL_COMPENSATE_QUEUE_CAPACITY = 1000;
+    // 库存租约：每次预留的库存数（为空时不开启），各节点的租约记录（hash，见 lease.lua），
+    // 本地租约的有效期（秒），节点宕机后租约到期多久被回收（秒）
+    public static final String SECKILL_LEASE_SIZE_KEY = "seckill:leasesize:";
+    public static final String SECKILL_LEASE_KEY = "seckill:lease:";
+    public static final Long SECKILL_LEASE_TTL = 5L;
+    public static final Long SECKILL_LEASE_RECLAIM_GRACE = 60L;
+    // 秒杀券售罄 / 补货的广播频道，消息体为优惠券 id
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:soldout";
+    public static final String SECKILL_RESTOCK_CHANNEL = "seckill:restock";
+    // 本地售罄标记的有效期（秒），防止错过补货消息后一直拒绝请求
+    public static final Long SECKILL_SOLD_OUT_TTL = 60L;
+    // 本地缓存的秒杀券配置（时间窗口、租约大小）的有效期（秒），以及本地缓存（含售罄标记）最多的券数，
+    // 请求中的券 id 不可信，不存在的券也会被缓存，必须有上限
+    public static final Long SECKILL_LOCAL_CONFIG_TTL = 60L;
+    public static final int SECKILL_LOCAL_MAX_VOUCHERS = 10000;
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    // 缓存预热时每批读取的店铺数量
+    public static final int WARMUP_BATCH_SIZE = 500;
+    // 缓存预热的锁（多个节点同时启动时只有一个节点预热），以及预热完成的标记和它的有效期（秒），
+    // 标记存在时启动不再预热，手动触发不受标记影响
+    public static final String WARMUP_SHOP_LOCK = "warmup:shop";
+    public static final long WARMUP_SHOP_LOCK_TTL = 600L;
+    public static final String WARMUP_SHOP_DONE_KEY = "warmup:shop:done";
+    public static final long WARMUP_SHOP_DONE_TTL = 3600L;
     public static final String USER_SIGN_KEY = "sign:";
 }
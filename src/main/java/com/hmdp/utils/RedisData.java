@@ -8,4 +8,6 @@ import java.time.LocalDateTime;
 public class RedisData {
     private LocalDateTime expireTime;
     private Object data;
+    // 上一次重建缓存的耗时（毫秒），用于提前刷新时计算概率
+    private Long rebuildCost;
 }
@@ -19,16 +19,28 @@ public class RedisIdWorker {
     public long nextId(String keyPrefix) {
         // 1. 生成时间戳
         LocalDateTime now = LocalDateTime.now();
-        long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
-        long timeStamp = nowSecond - BEGIN_TIMESTAMP;
 
         // 2. 生成序列号（使用 Redis 自增）
-        // 2.1 获取当前日期，精确到天（按年、月、日分隔，便于后续统计）
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        // 2.2 通过 Redis 自增生成序列号
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        long count = stringRedisTemplate.opsForValue().increment(sequenceKey(keyPrefix, now));
 
         // 3. 拼接得到全局 ID
+        return toId(now, count);
+    }
+
+    /**
+     * 序列号的 key，按天分隔（按年、月、日分隔，便于后续统计）。
+     * 在 Lua 脚本中自增序列号时，使用这个 key 和 {@link #toId} 拼出与 nextId 相同格式的 ID
+     */
+    public String sequenceKey(String keyPrefix, LocalDateTime now) {
+        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
+        return "icr:" + keyPrefix + ":" + date;
+    }
+
+    /**
+     * 用时间戳和序列号拼接得到全局 ID
+     */
+    public long toId(LocalDateTime now, long count) {
+        long timeStamp = now.toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP;
         return timeStamp << COUNT_BITS | count;
     }
 
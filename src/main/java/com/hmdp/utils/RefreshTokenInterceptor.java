@@ -1,12 +1,11 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -14,7 +13,7 @@ import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 @Component
-public class RefreshTokenInterceptor implements HandlerInterceptor {
+public class RefreshTokenInterceptor implements AsyncHandlerInterceptor {
 
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
@@ -33,8 +32,11 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
             return true;
         }
 
-        // 3. 将 Hash 数据转化为 UserDTO
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
+        // 3. 将 Hash 数据转化为 UserDTO（字段很少，直接赋值，避免反射）
+        UserDTO userDTO = new UserDTO();
+        userDTO.setId(Long.valueOf(userMap.get("id").toString()));
+        userDTO.setNickName((String) userMap.get("nickName"));
+        userDTO.setIcon((String) userMap.get("icon"));
 
         // 4. 把用户信息保存到 ThreadLocal，放行
         UserHolder.saveUser(userDTO);
@@ -46,8 +48,14 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
 
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
-        HandlerInterceptor.super.afterCompletion(request, response, handler, ex);
+        AsyncHandlerInterceptor.super.afterCompletion(request, response, handler, ex);
         // 移除用户
         UserHolder.removeUser();
     }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 异步请求不会在当前线程上调用 afterCompletion，这里移除用户，避免串到下一个请求
+        UserHolder.removeUser();
+    }
 }
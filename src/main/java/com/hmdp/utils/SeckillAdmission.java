@@ -0,0 +1,197 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀准入控制，挡在秒杀脚本前面：
+ * 1. 本节点的令牌桶，速率按剩余库存计算（剩余库存的 SECKILL_ADMISSION_FACTOR 倍），不产生网络 IO；
+ * 2. 通过本地令牌桶的请求，再经过 Redis 中的 GCRA 脚本做整个集群的限流。
+ * 券配置了 seckill:limit:{voucherId}（rate、burst）时，两层都以配置为准。
+ * 令牌桶的速率通过 admission_rate.lua 异步计算，不在请求线程上等待 Redis；速率算出来之前按最低速率放行。
+ * 请求中的券 id 不可信，本地最多保存 SECKILL_LOCAL_MAX_VOUCHERS 个券的令牌桶，超出后共用一个按最低速率放行的令牌桶。
+ */
+@Slf4j
+@Component
+public class SeckillAdmission {
+
+    @Resource
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private static final DefaultRedisScript<Long> GCRA_SCRIPT;
+    static {
+        GCRA_SCRIPT = new DefaultRedisScript<>();
+        GCRA_SCRIPT.setLocation(new ClassPathResource("gcra.lua"));
+        GCRA_SCRIPT.setResultType(Long.class);
+    }
+    private static final DefaultRedisScript<Long> RATE_SCRIPT;
+    static {
+        RATE_SCRIPT = new DefaultRedisScript<>();
+        RATE_SCRIPT.setLocation(new ClassPathResource("admission_rate.lua"));
+        RATE_SCRIPT.setResultType(Long.class);
+    }
+
+    // 一段时间没有请求的券，不再刷新它的令牌桶
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final ConcurrentHashMap<Long, TokenBucket> buckets = new ConcurrentHashMap<>();
+    // 令牌桶数量达到上限之后，新的券共用这个令牌桶
+    private final TokenBucket overflow = new TokenBucket(SECKILL_ADMISSION_MIN_RATE);
+
+    // 放行/拒绝的请求数，按结果和所在的层统计
+    // NOTE: 不带券 id 标签，请求中的券 id 不可信，每个 id 一组指标会让指标数量无限增长
+    private Counter localRejected;
+    private Counter globalAdmitted;
+    private Counter globalRejected;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "seckill-admission");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    private void init() {
+        localRejected = counter("rejected", "local");
+        globalAdmitted = counter("admitted", "global");
+        globalRejected = counter("rejected", "global");
+        scheduler.scheduleWithFixedDelay(this::refresh,
+                SECKILL_ADMISSION_REFRESH_INTERVAL, SECKILL_ADMISSION_REFRESH_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 尝试准入，返回 false 表示这个请求已经不可能抢到，应该直接拒绝
+     */
+    public CompletableFuture<Boolean> tryAcquire(Long voucherId) {
+        // 1. 本地令牌桶
+        TokenBucket bucket = bucket(voucherId);
+        if (!bucket.tryAcquire()) {
+            localRejected.increment();
+            return CompletableFuture.completedFuture(false);
+        }
+
+        // 2. 集群限流
+        String rate = String.valueOf(bucket.rate);
+        return reactiveStringRedisTemplate.execute(GCRA_SCRIPT,
+                        Arrays.asList(SeckillKeys.gcraKey(voucherId), SeckillKeys.limitKey(voucherId)),
+                        Arrays.asList(rate, rate))
+                .next()
+                .map(r -> {
+                    boolean admitted = r == 1;
+                    (admitted ? globalAdmitted : globalRejected).increment();
+                    return admitted;
+                })
+                .toFuture();
+    }
+
+    // 取出券的令牌桶，没有时按最低速率创建，并异步计算速率
+    private TokenBucket bucket(Long voucherId) {
+        TokenBucket bucket = buckets.get(voucherId);
+        if (bucket != null) {
+            return bucket;
+        }
+        // 数量上限是软上限，并发创建时可能略微超出
+        if (buckets.size() >= SECKILL_LOCAL_MAX_VOUCHERS) {
+            return overflow;
+        }
+        TokenBucket created = new TokenBucket(SECKILL_ADMISSION_MIN_RATE);
+        bucket = buckets.putIfAbsent(voucherId, created);
+        if (bucket != null) {
+            return bucket;
+        }
+        loadRate(voucherId, created);
+        return created;
+    }
+
+    private Counter counter(String result, String layer) {
+        return Counter.builder("seckill.admission")
+                .description("秒杀准入控制放行/拒绝的请求数")
+                .tag("result", result)
+                .tag("layer", layer)
+                .register(meterRegistry);
+    }
+
+    // 按最新的剩余库存（或配置）重新计算各个券的速率，并清理不活跃的券。只发出异步请求，不等待结果
+    private void refresh() {
+        long now = System.currentTimeMillis();
+        buckets.forEach((voucherId, bucket) -> {
+            if (now - bucket.lastAccess > IDLE_MILLIS) {
+                buckets.remove(voucherId, bucket);
+                return;
+            }
+            loadRate(voucherId, bucket);
+        });
+    }
+
+    // 一次脚本调用算出速率，结果回来之后更新令牌桶；上一次的计算还没有返回时跳过（Redis 变慢时不堆积请求）
+    private void loadRate(Long voucherId, TokenBucket bucket) {
+        if (!bucket.loading.compareAndSet(false, true)) {
+            return;
+        }
+        reactiveStringRedisTemplate.execute(RATE_SCRIPT,
+                        Arrays.asList(SeckillKeys.limitKey(voucherId), SeckillKeys.stockKey(voucherId), SeckillKeys.leaseKey(voucherId)),
+                        Arrays.asList(String.valueOf(SECKILL_ADMISSION_FACTOR), String.valueOf(SECKILL_ADMISSION_MIN_RATE)))
+                .next()
+                .doFinally(signal -> bucket.loading.set(false))
+                .subscribe(rate -> bucket.setRate((int) Math.min(Integer.MAX_VALUE, rate)),
+                        e -> log.warn("计算秒杀准入速率失败, voucherId: {}", voucherId, e));
+    }
+
+    /**
+     * 令牌桶，容量为一秒的令牌数。用"理论到达时间"实现（与令牌桶等价），CAS 更新，热点券上没有锁竞争
+     */
+    private static class TokenBucket {
+        private final AtomicLong tat = new AtomicLong(System.nanoTime());
+        private volatile int rate;
+        private volatile long lastAccess = System.currentTimeMillis();
+        // 是否正在异步计算速率
+        private final AtomicBoolean loading = new AtomicBoolean(false);
+
+        private TokenBucket(int rate) {
+            this.rate = rate;
+        }
+
+        private void setRate(int rate) {
+            this.rate = rate;
+        }
+
+        private boolean tryAcquire() {
+            lastAccess = System.currentTimeMillis();
+            long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+            long tolerance = interval * Math.max(1, rate);
+            while (true) {
+                long now = System.nanoTime();
+                long current = tat.get();
+                long next = Math.max(current, now) + interval;
+                if (next - now > tolerance) {
+                    return false;
+                }
+                if (tat.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
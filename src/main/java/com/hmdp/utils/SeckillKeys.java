@@ -0,0 +1,72 @@
+package com.hmdp.utils;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀相关的 Redis key。同一张券的 key 都带上 {voucherId} hash tag，
+ * 在 Redis Cluster 中落在同一个 slot 上，秒杀脚本才能原子地同时操作它们；不同的券分散到不同的 slot。
+ */
+public final class SeckillKeys {
+
+    private SeckillKeys() {
+    }
+
+    public static String tag(Long voucherId) {
+        return "{" + voucherId + "}";
+    }
+
+    // 库存
+    public static String stockKey(Long voucherId) {
+        return SECKILL_STOCK_KEY + tag(voucherId);
+    }
+
+    // 已下单的用户（bitmap，偏移量为用户 id）
+    public static String buyersKey(Long voucherId) {
+        return SECKILL_BUYERS_KEY + tag(voucherId);
+    }
+
+    // 已下单的用户数，与 bitmap 在同一个脚本中更新
+    public static String buyerCountKey(Long voucherId) {
+        return buyersKey(voucherId) + ":count";
+    }
+
+    // 已下单、还没有落库的订单
+    public static String pendingKey(Long voucherId) {
+        return SECKILL_PENDING_KEY + tag(voucherId);
+    }
+
+    // 上一次对账时缺少订单的用户
+    public static String reconcileMissingKey(Long voucherId) {
+        return SECKILL_RECONCILE_MISSING_KEY + tag(voucherId);
+    }
+
+    // 对账时已经补发过的订单
+    public static String reconcileReplayedKey(Long voucherId) {
+        return SECKILL_RECONCILE_REPLAYED_KEY + tag(voucherId);
+    }
+
+    // 秒杀时间窗口
+    public static String windowKey(Long voucherId) {
+        return SECKILL_WINDOW_KEY + tag(voucherId);
+    }
+
+    // 库存租约每次预留的库存数
+    public static String leaseSizeKey(Long voucherId) {
+        return SECKILL_LEASE_SIZE_KEY + tag(voucherId);
+    }
+
+    // 各节点的库存租约记录
+    public static String leaseKey(Long voucherId) {
+        return SECKILL_LEASE_KEY + tag(voucherId);
+    }
+
+    // 准入限流配置
+    public static String limitKey(Long voucherId) {
+        return SECKILL_LIMIT_KEY + tag(voucherId);
+    }
+
+    // 准入限流的 GCRA 状态
+    public static String gcraKey(Long voucherId) {
+        return SECKILL_GCRA_KEY + tag(voucherId);
+    }
+}
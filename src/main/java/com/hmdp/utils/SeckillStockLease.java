@@ -0,0 +1,253 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀库存租约：券配置了 seckill:leasesize:{voucherId} 时，每个节点用 lease.lua 一次从 Redis 预留一批库存，
+ * 之后在本地原子计数器上扣减，库存 key 的访问减少为原来的 1 / 租约大小。一人一单仍然由秒杀脚本在 Redis 中检查。
+ * <p>
+ * 未卖完的库存在租约到期（SECKILL_LEASE_TTL）或节点关闭时归还；节点宕机时由库存对账回收到期的租约。
+ */
+@Slf4j
+@Component
+public class SeckillStockLease {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    private static final DefaultRedisScript<Long> LEASE_SCRIPT;
+    static {
+        LEASE_SCRIPT = new DefaultRedisScript<>();
+        LEASE_SCRIPT.setLocation(new ClassPathResource("lease.lua"));
+        LEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    // 本节点的 id（pid@hostname），作为租约记录的 field
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName();
+
+    // 每张券的租约大小，0 表示没有开启租约，有上限和有效期
+    private final LocalCache leaseSizes = new LocalCache(SECKILL_LOCAL_MAX_VOUCHERS);
+    // 每张券当前的租约
+    private final ConcurrentHashMap<Long, Lease> leases = new ConcurrentHashMap<>();
+    // 正在申请中的租约，同一张券同时只有一个申请
+    private final ConcurrentHashMap<Long, CompletableFuture<Lease>> acquiring = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "seckill-stock-lease");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    private void init() {
+        scheduler.scheduleWithFixedDelay(this::expire, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        scheduler.shutdownNow();
+        // 归还所有未卖完的库存
+        leases.forEach((voucherId, lease) -> {
+            leases.remove(voucherId, lease);
+            int remaining = lease.remaining.getAndSet(0);
+            if (remaining > 0) {
+                stringRedisTemplate.execute(LEASE_SCRIPT, keys(voucherId), "release", nodeId, String.valueOf(remaining), "0");
+            }
+        });
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+
+    /**
+     * 本节点的租约中是否还有库存（其他节点售罄时，本节点还可以继续卖租约中的库存）
+     */
+    public boolean hasStock(Long voucherId) {
+        Lease lease = leases.get(voucherId);
+        return lease != null && !lease.isExpired() && lease.remaining.get() > 0;
+    }
+
+    /**
+     * 券的租约大小，0 表示没有开启库存租约。可能会同步读取 Redis，不能在 Redis 的回调线程中调用
+     */
+    public int leaseSize(Long voucherId) {
+        // 每个节点每张券在有效期内只读一次
+        Integer size = (Integer) leaseSizes.get(voucherId.toString());
+        if (size == null) {
+            String value = stringRedisTemplate.opsForValue().get(SeckillKeys.leaseSizeKey(voucherId));
+            size = value == null ? 0 : Integer.parseInt(value);
+            leaseSizes.put(voucherId.toString(), size, TimeUnit.SECONDS.toMillis(SECKILL_LOCAL_CONFIG_TTL));
+        }
+        return size;
+    }
+
+    /**
+     * 券的配置变了（重新上架、补货），下次重新读取租约大小
+     */
+    public void invalidate(Long voucherId) {
+        leaseSizes.remove(voucherId.toString());
+    }
+
+    /**
+     * 从本地租约中扣减一个库存，本地租约用完时向 Redis 申请新的租约
+     * @param size 租约大小，见 {@link #leaseSize}
+     * @return 扣减库存的租约，null 表示已经售罄
+     */
+    public CompletableFuture<Lease> take(Long voucherId, int size) {
+        Lease lease = leases.get(voucherId);
+        if (lease != null && !lease.isExpired() && lease.tryTake()) {
+            return CompletableFuture.completedFuture(lease);
+        }
+        // 本地的库存用完了，等待新的租约，新租约也被其他请求抢完时再申请
+        return acquire(voucherId, size).thenCompose(next -> {
+            if (next == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return next.tryTake() ? CompletableFuture.completedFuture(next) : take(voucherId, size);
+        });
+    }
+
+    /**
+     * 扣减了库存但没有下单成功（重复下单、不在秒杀时间内、脚本执行失败），把库存还给租约。
+     * 即使脚本其实已经执行成功，多还的库存也会在 Redis 中的租约记录用完时被秒杀脚本拒绝（-5），不会超卖
+     */
+    public void giveBack(Long voucherId, Lease lease) {
+        lease.remaining.incrementAndGet();
+        if (leases.get(voucherId) != lease) {
+            // 租约已经到期被归还了，这个库存直接还给 Redis
+            drain(voucherId, lease);
+        }
+    }
+
+    /**
+     * 租约在 Redis 中已经被回收（秒杀脚本返回 -5），丢弃本地剩余的库存
+     */
+    public void revoke(Long voucherId, Lease lease) {
+        leases.remove(voucherId, lease);
+        lease.remaining.set(0);
+    }
+
+    private CompletableFuture<Lease> acquire(Long voucherId, int size) {
+        CompletableFuture<Lease> pending = new CompletableFuture<>();
+        CompletableFuture<Lease> existing = acquiring.putIfAbsent(voucherId, pending);
+        if (existing != null) {
+            return existing;
+        }
+        long ttl = TimeUnit.SECONDS.toMillis(SECKILL_LEASE_TTL);
+        reactiveStringRedisTemplate.execute(LEASE_SCRIPT, keys(voucherId),
+                        Arrays.asList("acquire", nodeId, String.valueOf(size), String.valueOf(ttl)))
+                .next()
+                .toFuture()
+                .whenComplete((taken, e) -> {
+                    // 先移除再完成，之后重新申请的请求不会拿到这个已经完成的申请
+                    acquiring.remove(voucherId, pending);
+                    if (e != null) {
+                        pending.completeExceptionally(e);
+                        return;
+                    }
+                    if (taken <= 0) {
+                        pending.complete(null);
+                        return;
+                    }
+                    Lease lease = new Lease(taken.intValue(), System.currentTimeMillis() + ttl);
+                    Lease old = leases.put(voucherId, lease);
+                    if (old != null) {
+                        drain(voucherId, old);
+                    }
+                    pending.complete(lease);
+                });
+        return pending;
+    }
+
+    // 归还到期的租约
+    private void expire() {
+        leases.forEach((voucherId, lease) -> {
+            if (lease.isExpired()) {
+                leases.remove(voucherId, lease);
+                drain(voucherId, lease);
+            }
+        });
+    }
+
+    // 把已经不在使用的租约中剩余的库存还给 Redis，并通知所有节点清掉售罄标记
+    private void drain(Long voucherId, Lease lease) {
+        int remaining = lease.remaining.getAndSet(0);
+        if (remaining <= 0) {
+            return;
+        }
+        reactiveStringRedisTemplate.execute(LEASE_SCRIPT, keys(voucherId),
+                        Arrays.asList("release", nodeId, String.valueOf(remaining), "0"))
+                .next()
+                .filter(released -> released > 0)
+                .flatMap(released -> reactiveStringRedisTemplate.convertAndSend(SECKILL_RESTOCK_CHANNEL, voucherId.toString()))
+                // 归还失败时库存仍然记在租约记录中，到期后由库存对账回收
+                .subscribe(r -> { }, e -> log.error("归还库存租约失败, voucherId: {}, 数量: {}", voucherId, remaining, e));
+    }
+
+    /**
+     * 回收宕机节点到期的租约（库存对账时调用）
+     * @return 归还的库存数
+     */
+    public long reclaim(Long voucherId, String node) {
+        Long released = stringRedisTemplate.execute(LEASE_SCRIPT, keys(voucherId), "reclaim", node, "0",
+                String.valueOf(TimeUnit.SECONDS.toMillis(SECKILL_LEASE_RECLAIM_GRACE)));
+        if (released != null && released > 0) {
+            stringRedisTemplate.convertAndSend(SECKILL_RESTOCK_CHANNEL, voucherId.toString());
+            return released;
+        }
+        return 0;
+    }
+
+    private static List<String> keys(Long voucherId) {
+        return Arrays.asList(SeckillKeys.stockKey(voucherId), SeckillKeys.leaseKey(voucherId));
+    }
+
+    /**
+     * 本节点持有的一份租约
+     */
+    public static final class Lease {
+        private final AtomicInteger remaining;
+        private final long expireAt;
+
+        private Lease(int remaining, long expireAt) {
+            this.remaining = new AtomicInteger(remaining);
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expireAt;
+        }
+
+        private boolean tryTake() {
+            while (true) {
+                int current = remaining.get();
+                if (current <= 0) {
+                    return false;
+                }
+                if (remaining.compareAndSet(current, current - 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
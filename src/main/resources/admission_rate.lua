@@ -0,0 +1,31 @@
+-- 计算秒杀准入的本地令牌桶速率（每秒放行数），一次调用读取限流配置、库存和各节点的租约
+
+-- key 列表
+-- 限流配置 Key（hash：rate、burst）
+local limitKey = KEYS[1]
+-- 库存 Key
+local stockKey = KEYS[2]
+-- 各节点的库存租约 Key（hash：node -> 租约中剩余的库存，node:expire -> 租约过期时间）
+local leaseKey = KEYS[3]
+
+-- 参数列表
+-- 每秒放行剩余库存的多少倍
+local factor = tonumber(ARGV[1])
+-- 最低放行数
+local minRate = tonumber(ARGV[2])
+
+-- 1. 有配置时以配置为准
+local rate = tonumber(redis.call("hget", limitKey, "rate"))
+if (rate ~= nil) then
+    return rate
+end
+
+-- 2. 按剩余库存计算：Redis 中的库存，加上各节点租约中还没有卖出的库存
+local stock = math.max(0, tonumber(redis.call("get", stockKey)) or 0)
+local leases = redis.call("hgetall", leaseKey)
+for i = 1, #leases, 2 do
+    if (string.sub(leases[i], -7) ~= ":expire") then
+        stock = stock + math.max(0, tonumber(leases[i + 1]) or 0)
+    end
+end
+return math.max(minRate, stock * factor)
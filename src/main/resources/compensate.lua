@@ -0,0 +1,24 @@
+-- 订单最终失败后的补偿：把用户移出已下单用户，并归还一个库存，返回 1 表示已补偿，0 表示无需补偿
+
+-- key 列表
+-- 库存 Key
+local stockKey = KEYS[1]
+-- 已下单用户的 bitmap Key，偏移量为用户 id
+local buyersKey = KEYS[2]
+-- 已下单用户数 Key
+local buyerCountKey = KEYS[3]
+-- 还没有落库的订单 Key（见 seckill.lua）
+local pendingKey = KEYS[4]
+
+-- 参数列表
+-- 用户 id
+local userId = ARGV[1]
+
+-- 用户没有下单，说明已经补偿过了（重复的死信），不能重复归还库存
+if (redis.call("setbit", buyersKey, userId, 0) == 0) then
+    return 0
+end
+redis.call("decr", buyerCountKey)
+redis.call("hdel", pendingKey, userId)
+redis.call("incrby", stockKey, 1)
+return 1
@@ -0,0 +1,39 @@
+-- GCRA（通用信元速率算法）限流，返回 1 放行，0 拒绝
+-- 只保存一个"理论到达时间"（TAT），每放行一个请求 TAT 向后推一个发放间隔
+
+-- key 列表
+-- TAT Key
+local tatKey = KEYS[1]
+-- 限流配置 Key（hash：rate 每秒放行数，burst 允许的突发数），不存在时使用参数中的默认值
+local limitKey = KEYS[2]
+
+-- 参数列表
+local rate = tonumber(redis.call("hget", limitKey, "rate")) or tonumber(ARGV[1])
+local burst = tonumber(redis.call("hget", limitKey, "burst")) or tonumber(ARGV[2])
+if (rate == nil or rate <= 0) then
+    -- 没有配置限流
+    return 1
+end
+
+-- 使用 Redis 的时间，各个节点的时钟不一致也没关系（微秒）
+redis.replicate_commands()
+local time = redis.call("time")
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+
+-- 发放间隔、允许提前的时间
+local interval = 1000000 / rate
+local tolerance = interval * math.max(burst, 1)
+
+local tat = tonumber(redis.call("get", tatKey)) or now
+if (tat < now) then
+    tat = now
+end
+if (tat + interval - now > tolerance) then
+    -- 来得太早，拒绝
+    return 0
+end
+
+-- 放行，推后 TAT
+tat = tat + interval
+redis.call("set", tatKey, string.format("%d", math.floor(tat)), "px", math.ceil((tat - now) / 1000) + 1)
+return 1
@@ -0,0 +1,56 @@
+-- 库存租约：节点一次从 Redis 预留一批库存，在本地扣减；未卖完的库存在租约到期或节点关闭时归还
+-- 租约记录在 hash 中：field 为节点 id 时，值为该节点尚未卖出的租约库存（下单脚本每卖出一个减 1）；
+-- field 为 节点 id:expire 时，值为租约的到期时间（毫秒）
+
+-- key 列表，都带有 {voucherId} hash tag
+-- 库存 Key
+local stockKey = KEYS[1]
+-- 租约记录 Key
+local leaseKey = KEYS[2]
+
+-- 参数列表
+-- 操作：acquire 预留库存，返回实际预留的数量（库存不够时少于请求的数量，0 表示已售罄）；
+--      release 归还库存；reclaim 回收到期超过宽限时间的租约（节点已经宕机）。release / reclaim 返回归还的数量
+local op = ARGV[1]
+-- 节点 id
+local node = ARGV[2]
+-- acquire / release：数量；reclaim：忽略
+local n = tonumber(ARGV[3])
+-- acquire：租约有效期；reclaim：宽限时间（毫秒）
+local millis = tonumber(ARGV[4])
+
+redis.replicate_commands()
+local time = redis.call("time")
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+if (op == "acquire") then
+    local stock = tonumber(redis.call("get", stockKey)) or 0
+    local taken = math.max(math.min(stock, n), 0)
+    if (taken > 0) then
+        redis.call("incrby", stockKey, -taken)
+        redis.call("hincrby", leaseKey, node, taken)
+        redis.call("hset", leaseKey, node .. ":expire", now + millis)
+    end
+    return taken
+end
+
+-- 只能归还 Redis 中记录的该节点尚未卖出的数量，重复归还、回收之后再归还都不会多还
+local leased = tonumber(redis.call("hget", leaseKey, node)) or 0
+if (op == "reclaim") then
+    local expire = tonumber(redis.call("hget", leaseKey, node .. ":expire")) or 0
+    if (now < expire + millis) then
+        return 0
+    end
+    n = leased
+end
+local amount = math.min(n, leased)
+if (leased - amount <= 0) then
+    redis.call("hdel", leaseKey, node, node .. ":expire")
+else
+    redis.call("hincrby", leaseKey, node, -amount)
+end
+if (amount <= 0) then
+    return 0
+end
+redis.call("incrby", stockKey, amount)
+return amount
@@ -0,0 +1,20 @@
+-- 把旧版本已下单用户集合中的用户写入 bitmap，同时维护已下单用户数，返回新写入的用户数
+-- 已经在 bitmap 中的用户（迁移重复执行、迁移期间又下了单）不会重复计数
+
+-- key 列表，都带有 {voucherId} hash tag
+-- 已下单用户的 bitmap Key
+local buyersKey = KEYS[1]
+-- 已下单用户数 Key
+local buyerCountKey = KEYS[2]
+
+-- 参数列表：旧集合中的用户 id
+local migrated = 0
+for _, userId in ipairs(ARGV) do
+    if (redis.call("setbit", buyersKey, userId, 1) == 0) then
+        migrated = migrated + 1
+    end
+end
+if (migrated > 0) then
+    redis.call("incrby", buyerCountKey, migrated)
+end
+return migrated
@@ -1,31 +1,80 @@
--- 参数列表
--- 1.1 优惠券 id
-local voucherId = ARGV[1]
--- 1.2 用户 id
-local userId = ARGV[2]
--- 1.3 订单 id
-local orderId = ARGV[3]
+-- 返回值：-1 库存不足，-2 重复下单，-3 秒杀尚未开始，-4 秒杀已经结束，-5 本节点的库存租约已经被回收，
+-- 下单成功时返回订单 id 的序列号（只在下单成功时自增），
+-- 没有传入序列号 key 时下单成功返回 0（由调用方生成订单 id 并写入还没有落库的订单）。传入订单 Stream key 时，下单成功后在同一次调用中把订单写入 Stream
 
--- key 列表
+-- key 列表，都带有 {voucherId} hash tag，集群模式下在同一个 slot
 -- 库存 Key
-local stockKey = "seckill:stock:" .. voucherId
--- 订单 Key
-local orderKey = "seckill:order:" .. voucherId
+local stockKey = KEYS[1]
+-- 已下单用户的 bitmap Key，偏移量为用户 id
+local buyersKey = KEYS[2]
+-- 秒杀时间窗口 Key，值为 "开始时间:结束时间"（epoch 秒）
+local windowKey = KEYS[3]
+-- 库存租约记录 Key（见 lease.lua）
+local leaseKey = KEYS[4]
+-- 已下单用户数 Key
+local buyerCountKey = KEYS[5]
+-- 还没有落库的订单 Key（hash，field 为用户 id，值为 "时间戳:序列号"），库存对账时用来找回丢失的订单
+local pendingKey = KEYS[6]
+-- 订单 id 序列号的 key（icr:order:yyyy:MM:dd），可选
+local sequenceKey = KEYS[7]
+-- 订单 Stream 的 key，可选，需要同时传入序列号 key
+local streamKey = KEYS[8]
+
+-- 参数列表
+-- 用户 id
+local userId = ARGV[1]
+-- 优惠券 id 和订单 id 的时间戳部分（epoch 秒），写入 Stream 时使用
+local voucherId = ARGV[2]
+local timestamp = ARGV[3]
+-- 节点 id，可选，传入时表示库存已经从该节点的租约中扣减，不再访问库存 key
+local node = ARGV[4]
+
+-- 校验秒杀时间，以 Redis 的时间为准（TIME 之后还有写命令，需要按命令复制）
+local window = redis.call("get", windowKey)
+if (window) then
+    local beginTime, endTime = string.match(window, "(%d+):(%d+)")
+    redis.replicate_commands()
+    local now = tonumber(redis.call("time")[1])
+    if (now < tonumber(beginTime)) then
+        return -3
+    end
+    if (now > tonumber(endTime)) then
+        return -4
+    end
+end
 
-if (tonumber(redis.call("get", stockKey)) <= 0) then
+if (node ~= nil) then
+    -- 租约模式：库存已经在本地扣减，Redis 中记录的该节点租约库存还有剩余才能下单（租约可能已经被当作宕机节点的租约回收）
+    if ((tonumber(redis.call("hget", leaseKey, node)) or 0) <= 0) then
+        return -5
+    end
+elseif ((tonumber(redis.call("get", stockKey)) or 0) <= 0) then
     -- 库存不足
-    return 1
+    return -1
 end
 
-if (redis.call("sismember", orderKey, userId) == 1) then
+if (redis.call("getbit", buyersKey, userId) == 1) then
     -- 用户已经购买过
-    return 2
+    return -2
 end
 
--- 扣减库存
-redis.call("incrby", stockKey, -1)
+-- 扣减库存，租约模式下扣减租约记录
+if (node ~= nil) then
+    redis.call("hincrby", leaseKey, node, -1)
+else
+    redis.call("incrby", stockKey, -1)
+end
 -- 下单
-redis.call("sadd", orderKey, userId)
--- 将订单放入消息队列中(已经在外面手动建好了)
--- redis.call("xadd", "stream.orders", "*", "userId", userId, "voucherId", voucherId, "id", orderId)
-return 0
\ No newline at end of file
+redis.call("setbit", buyersKey, userId, 1)
+redis.call("incr", buyerCountKey)
+-- 生成订单 id 的序列号
+if (sequenceKey == nil) then
+    return 0
+end
+local seq = redis.call("incr", sequenceKey)
+redis.call("hset", pendingKey, userId, timestamp .. ":" .. seq)
+-- 将订单放入消息队列中（消费者组在启动时创建）
+if (streamKey ~= nil) then
+    redis.call("xadd", streamKey, "*", "userId", userId, "voucherId", voucherId, "timestamp", timestamp, "seq", seq)
+end
+return seq
@@ -105,9 +105,9 @@ public class HmDianPingApplicationTests {
     public void tokenBy1000() throws Exception {
         String phone = "";
         String code = "";
-        //注意！这里的绝对路径设置为自己想要的地方
+        // token 写到 target/token.txt，不依赖本机的绝对路径
         OutputStreamWriter osw = null;
-        osw = new OutputStreamWriter(new FileOutputStream("D:\\workspace\\temp\\token.txt"));
+        osw = new OutputStreamWriter(new FileOutputStream("target/token.txt"));
         //先模拟10个用户的登录
         for (int i = 1; i < 1000; i++) {
             User user = userService.getById(i);
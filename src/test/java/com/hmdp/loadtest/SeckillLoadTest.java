@@ -0,0 +1,290 @@
+package com.hmdp.loadtest;
+
+import com.hmdp.dto.Result;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Voucher;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.JWTUtils;
+import com.hmdp.utils.SeckillKeys;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RedissonClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import redis.embedded.RedisServer;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 秒杀链路端到端压测：启动整个应用，Kafka 使用内嵌 broker，Redis 使用本地启动的 redis-server，数据库使用 H2。
+ * 直接生成 N 个用户的 JWT 和登录信息，并发请求秒杀接口（每个用户请求两次，检验一人一单），输出：
+ * 吞吐量、p50/p99/p999 延迟、是否超卖/重复下单、消费者追平（数据库订单数与秒杀成功数一致）所需时间和最大积压。
+ * <p>
+ * 执行：mvn test -Ploadtest [-Dloadtest.users=5000 -Dloadtest.stock=500 -Dloadtest.concurrency=200 -Dloadtest.queue=kafka]，
+ * loadtest.queue 为订单队列的实现（seckill.order.queue）：kafka / redis-stream / memory，
+ * loadtest.lease 大于 1 时开启库存租约，每次预留 loadtest.lease 个库存
+ */
+@Tag("loadtest")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        // 建表放在连接的 INIT 中，保证比店铺服务等 bean 初始化时的查询更早执行
+        "spring.datasource.url=jdbc:h2:mem:hmdp;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"
+                + ";INIT=RUNSCRIPT FROM 'classpath:loadtest/schema.sql'",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "logging.level.com.hmdp=info",
+        "seckill.order.queue=${loadtest.queue:kafka}"
+})
+@EmbeddedKafka(partitions = 4, topics = {"voucher-orders", "voucher-orders.DLT"},
+        bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+@Slf4j
+public class SeckillLoadTest {
+
+    private static final int USERS = Integer.getInteger("loadtest.users", 2000);
+    private static final int STOCK = Integer.getInteger("loadtest.stock", 200);
+    private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 100);
+    // 等待消费者追平的最长时间（秒）
+    private static final int CONVERGE_TIMEOUT = Integer.getInteger("loadtest.convergeTimeout", 60);
+    private static final String QUEUE = System.getProperty("loadtest.queue", "kafka");
+    private static final Integer LEASE = Integer.getInteger("loadtest.lease");
+
+    private static RedisServer redisServer;
+
+    // 秒杀链路用不到 Redisson，不需要再启动三个 Redis
+    @MockBean(name = "redissonClient1")
+    private RedissonClient redissonClient1;
+    @MockBean(name = "redissonClient2")
+    private RedissonClient redissonClient2;
+    @MockBean(name = "redissonClient3")
+    private RedissonClient redissonClient3;
+
+    @Resource
+    private TestRestTemplate restTemplate;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private IVoucherService voucherService;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+    @Resource
+    private EmbeddedKafkaBroker embeddedKafka;
+
+    @DynamicPropertySource
+    static void redisProperties(DynamicPropertyRegistry registry) throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        registry.add("spring.redis.host", () -> "127.0.0.1");
+        registry.add("spring.redis.port", () -> port);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    @Test
+    void seckill() throws Exception {
+        // 1. 准备秒杀券和用户
+        Long voucherId = createVoucher();
+        List<String> tokens = mintTokens();
+
+        // 2. 并发请求，每个用户请求两次
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>(USERS * 2));
+        Map<Long, Long> orders = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(CONCURRENCY);
+        List<Callable<Void>> tasks = new ArrayList<>(USERS * 2);
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < USERS; i++) {
+                long userId = i + 1;
+                String token = tokens.get(i);
+                tasks.add(() -> {
+                    long begin = System.nanoTime();
+                    Result result = seckill(voucherId, token);
+                    latencies.add(System.nanoTime() - begin);
+                    if (Boolean.TRUE.equals(result.getSuccess())) {
+                        Long previous = orders.put(((Number) result.getData()).longValue(), userId);
+                        assertNull(previous, "订单 id 重复");
+                    } else {
+                        failures.computeIfAbsent(String.valueOf(result.getErrorMsg()), k -> new AtomicInteger()).incrementAndGet();
+                    }
+                    return null;
+                });
+            }
+        }
+        Collections.shuffle(tasks);
+        long begin = System.nanoTime();
+        List<Future<Void>> futures = pool.invokeAll(tasks);
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+        // 任务中的断言失败和请求异常都在 Future 中，取出来让测试失败
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+
+        // 3. 吞吐量和延迟
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        log.info("订单队列: {}, 请求数: {}, 并发: {}, 耗时: {} ms, 吞吐量: {} req/s",
+                QUEUE, sorted.size(), CONCURRENCY, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                String.format("%.0f", sorted.size() * 1e9 / elapsed));
+        log.info("延迟 p50: {} ms, p99: {} ms, p999: {} ms, max: {} ms",
+                String.format("%.2f", percentile(sorted, 0.5)), String.format("%.2f", percentile(sorted, 0.99)),
+                String.format("%.2f", percentile(sorted, 0.999)), String.format("%.2f", percentile(sorted, 1.0)));
+        log.info("秒杀成功: {}, 失败: {}", orders.size(), failures);
+
+        // 4. 超卖和重复下单
+        assertTrue(orders.size() <= STOCK, "超卖: 成功 " + orders.size() + " 单, 库存 " + STOCK);
+        assertEquals(orders.size(), new HashSet<>(orders.values()).size(), "同一个用户抢到了多单");
+        // 剩余库存包括各节点租约中还没有卖出的库存
+        long redisStock = Long.parseLong(stringRedisTemplate.opsForValue().get(SeckillKeys.stockKey(voucherId)));
+        for (Map.Entry<Object, Object> lease : stringRedisTemplate.opsForHash().entries(SeckillKeys.leaseKey(voucherId)).entrySet()) {
+            if (!lease.getKey().toString().endsWith(":expire")) {
+                redisStock += Long.parseLong(lease.getValue().toString());
+            }
+        }
+        assertEquals(STOCK - orders.size(), redisStock, "Redis 剩余库存与成功数不一致");
+        assertEquals(String.valueOf(orders.size()), stringRedisTemplate.opsForValue().get(SeckillKeys.buyerCountKey(voucherId)),
+                "Redis 已下单用户数与成功数不一致");
+
+        // 5. 等待消费者追平
+        long convergeBegin = System.nanoTime();
+        long maxLag = 0;
+        long persisted = 0;
+        try (AdminClient admin = AdminClient.create(Collections.singletonMap(
+                AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, embeddedKafka.getBrokersAsString()))) {
+            while (System.nanoTime() - convergeBegin < TimeUnit.SECONDS.toNanos(CONVERGE_TIMEOUT)) {
+                maxLag = Math.max(maxLag, queueLag(admin));
+                persisted = voucherOrderService.query().eq("voucher_id", voucherId).count();
+                if (persisted == orders.size()) {
+                    break;
+                }
+                Thread.sleep(100);
+            }
+        }
+        log.info("消费者追平耗时: {} ms, 最大积压: {} 条",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - convergeBegin), maxLag);
+
+        // 6. 数据库与 Redis 一致
+        assertEquals(orders.size(), persisted, "数据库订单数与秒杀成功数不一致");
+        SeckillVoucher seckillVoucher = seckillVoucherService.getById(voucherId);
+        assertEquals(STOCK - orders.size(), seckillVoucher.getStock().intValue(), "数据库剩余库存与成功数不一致");
+        assertEquals(orders.size(), voucherOrderService.query().eq("voucher_id", voucherId)
+                .in("id", orders.keySet()).count(), "数据库中的订单与返回的订单 id 不一致");
+    }
+
+    private Long createVoucher() {
+        Voucher voucher = new Voucher();
+        voucher.setShopId(1L);
+        voucher.setTitle("压测秒杀券");
+        voucher.setPayValue(100L);
+        voucher.setActualValue(1000L);
+        voucher.setType(1);
+        voucher.setStatus(1);
+        voucher.setStock(STOCK);
+        voucher.setStockLease(LEASE);
+        voucher.setBeginTime(LocalDateTime.now().minusHours(1));
+        voucher.setEndTime(LocalDateTime.now().plusHours(1));
+        voucherService.addSeckillVoucher(voucher);
+        return voucher.getId();
+    }
+
+    // 直接写入登录信息并签发 JWT，跳过验证码登录
+    private List<String> mintTokens() {
+        List<String> tokens = new ArrayList<>(USERS);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (long userId = 1; userId <= USERS; userId++) {
+                Map<String, String> user = new HashMap<>(4);
+                user.put("id", String.valueOf(userId));
+                user.put("nickName", "user_" + userId);
+                user.put("icon", "");
+                conn.hMSet(LOGIN_USER_KEY + userId, user);
+            }
+            return null;
+        });
+        for (long userId = 1; userId <= USERS; userId++) {
+            tokens.add(JWTUtils.generateToken(userId));
+        }
+        return tokens;
+    }
+
+    private Result seckill(Long voucherId, String token) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("authorization", token);
+        return restTemplate.exchange("/voucher-order/seckill/" + voucherId, HttpMethod.POST,
+                new HttpEntity<>(headers), Result.class).getBody();
+    }
+
+    // 订单队列的积压：Kafka 为订单主题上所有分区的（最新 offset - 已提交 offset），
+    // Redis Stream 为 Stream 的长度（处理完的消息会被删除），内存队列无法从外部观察，记为 0
+    private long queueLag(AdminClient admin) throws Exception {
+        if ("redis-stream".equals(QUEUE)) {
+            Long size = stringRedisTemplate.opsForStream().size(SECKILL_ORDER_STREAM_KEY);
+            return size == null ? 0 : size;
+        }
+        if (!"kafka".equals(QUEUE)) {
+            return 0;
+        }
+        Map<TopicPartition, OffsetAndMetadata> committed = admin
+                .listConsumerGroupOffsets("voucher-order-group")
+                .partitionsToOffsetAndMetadata().get();
+        Map<TopicPartition, OffsetSpec> request = new HashMap<>();
+        for (int p = 0; p < embeddedKafka.getPartitionsPerTopic(); p++) {
+            request.put(new TopicPartition("voucher-orders", p), OffsetSpec.latest());
+        }
+        long lag = 0;
+        for (Map.Entry<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> e : admin.listOffsets(request).all().get().entrySet()) {
+            OffsetAndMetadata offset = committed.get(e.getKey());
+            lag += e.getValue().offset() - (offset == null ? 0 : offset.offset());
+        }
+        return lag;
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1))) / 1e6;
+    }
+}
@@ -0,0 +1,66 @@
+package com.hmdp.queue;
+
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * 订单落库：整批失败时重试，重试用完后逐条落库，只补偿仍然失败的订单
+ */
+class OrderBatchHandlerTest {
+
+    private OrderBatchHandler orderBatchHandler;
+    private IVoucherOrderService voucherOrderService;
+
+    private final VoucherOrder first = new VoucherOrder().setId(1L).setUserId(1L).setVoucherId(1L);
+    private final VoucherOrder second = new VoucherOrder().setId(2L).setUserId(2L).setVoucherId(1L);
+    private final List<VoucherOrder> orders = Arrays.asList(first, second);
+
+    @BeforeEach
+    void setUp() {
+        voucherOrderService = Mockito.mock(IVoucherOrderService.class);
+        orderBatchHandler = new OrderBatchHandler();
+        ReflectionTestUtils.setField(orderBatchHandler, "voucherOrderService", voucherOrderService);
+    }
+
+    @Test
+    void batchSucceedsOnRetry() {
+        doThrow(new IllegalStateException("db down")).doNothing().when(voucherOrderService).createVoucherOrders(anyList());
+
+        orderBatchHandler.handle(orders);
+
+        verify(voucherOrderService, times(2)).createVoucherOrders(orders);
+        verify(voucherOrderService, never()).createVoucherOrder(any());
+        verify(voucherOrderService, never()).compensateOrder(any());
+    }
+
+    @Test
+    void failedOrderIsCompensatedAfterFallingBackToSingleOrders() {
+        doThrow(new IllegalStateException("duplicate")).when(voucherOrderService).createVoucherOrders(anyList());
+        doThrow(new IllegalStateException("duplicate")).when(voucherOrderService).createVoucherOrder(second);
+
+        // 中断当前线程，跳过退避等待，直接逐条落库（与应用关闭时的行为一致）
+        Thread.currentThread().interrupt();
+        try {
+            orderBatchHandler.handle(orders);
+        } finally {
+            Thread.interrupted();
+        }
+
+        verify(voucherOrderService, times(1)).createVoucherOrders(orders);
+        verify(voucherOrderService).createVoucherOrder(first);
+        verify(voucherOrderService).createVoucherOrder(second);
+        verify(voucherOrderService, never()).compensateOrder(first);
+        verify(voucherOrderService).compensateOrder(second);
+    }
+}
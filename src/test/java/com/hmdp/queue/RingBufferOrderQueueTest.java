@@ -0,0 +1,144 @@
+package com.hmdp.queue;
+
+import com.hmdp.entity.VoucherOrder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_BATCH_SIZE;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_RING_CAPACITY;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+
+/**
+ * 环形队列：多个生产者写入的订单恰好落库一次，队列已满或关闭后拒绝写入，关闭时先把队列中的订单全部落库
+ */
+class RingBufferOrderQueueTest {
+
+    private RingBufferOrderQueue orderQueue;
+    private OrderBatchHandler orderBatchHandler;
+    // 落库的订单，handle 返回后批次会被清空，需要复制出来
+    private final List<Long> handled = Collections.synchronizedList(new ArrayList<>());
+    private volatile int maxBatchSize;
+
+    @BeforeEach
+    void setUp() {
+        orderBatchHandler = Mockito.mock(OrderBatchHandler.class);
+        Mockito.doAnswer(invocation -> {
+            List<VoucherOrder> batch = invocation.getArgument(0);
+            maxBatchSize = Math.max(maxBatchSize, batch.size());
+            for (VoucherOrder order : batch) {
+                handled.add(order.getId());
+            }
+            return null;
+        }).when(orderBatchHandler).handle(anyList());
+        orderQueue = new RingBufferOrderQueue();
+        ReflectionTestUtils.setField(orderQueue, "orderBatchHandler", orderBatchHandler);
+        ReflectionTestUtils.invokeMethod(orderQueue, "init");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(orderQueue, "destroy");
+    }
+
+    private static VoucherOrder order(long id) {
+        return new VoucherOrder().setId(id).setUserId(id).setVoucherId(1L);
+    }
+
+    private static boolean rejected(CompletableFuture<Void> future) throws InterruptedException {
+        try {
+            future.get();
+            return false;
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+            return true;
+        }
+    }
+
+    @Test
+    void ordersFromManyProducersAreHandledExactlyOnce() throws Exception {
+        int producers = 8;
+        int ordersPerProducer = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        List<Future<Set<Long>>> futures = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            long base = (long) p * ordersPerProducer;
+            futures.add(executor.submit(() -> {
+                Set<Long> accepted = new HashSet<>();
+                for (long id = base; id < base + ordersPerProducer; id++) {
+                    if (!rejected(orderQueue.send(order(id)))) {
+                        accepted.add(id);
+                    }
+                }
+                return accepted;
+            }));
+        }
+        Set<Long> accepted = new HashSet<>();
+        for (Future<Set<Long>> future : futures) {
+            accepted.addAll(future.get());
+        }
+        executor.shutdown();
+        ReflectionTestUtils.invokeMethod(orderQueue, "destroy");
+
+        assertFalse(accepted.isEmpty());
+        assertEquals(accepted.size(), handled.size());
+        assertEquals(accepted, new HashSet<>(handled));
+        assertTrue(maxBatchSize <= SECKILL_ORDER_BATCH_SIZE);
+    }
+
+    @Test
+    void fullQueueRejectsAndDrainsOnShutdown() throws Exception {
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            List<VoucherOrder> batch = invocation.getArgument(0);
+            for (VoucherOrder order : batch) {
+                handled.add(order.getId());
+            }
+            handling.countDown();
+            release.await();
+            return null;
+        }).when(orderBatchHandler).handle(anyList());
+
+        // 1. 第一个订单被取出后消费线程阻塞在落库上，队列不再释放位置
+        assertFalse(rejected(orderQueue.send(order(0))));
+        assertTrue(handling.await(10, TimeUnit.SECONDS));
+
+        // 2. 写满队列，之后的订单被拒绝
+        for (long id = 1; id <= SECKILL_ORDER_RING_CAPACITY; id++) {
+            assertFalse(rejected(orderQueue.send(order(id))));
+        }
+        assertTrue(rejected(orderQueue.send(order(SECKILL_ORDER_RING_CAPACITY + 1))));
+
+        // 3. 关闭时把队列中的订单全部落库
+        release.countDown();
+        ReflectionTestUtils.invokeMethod(orderQueue, "destroy");
+        assertEquals(SECKILL_ORDER_RING_CAPACITY + 1, handled.size());
+        assertEquals(SECKILL_ORDER_RING_CAPACITY + 1, new HashSet<>(handled).size());
+    }
+
+    @Test
+    void sendAfterShutdownIsRejected() throws Exception {
+        ReflectionTestUtils.invokeMethod(orderQueue, "destroy");
+
+        assertTrue(rejected(orderQueue.send(order(1))));
+        assertTrue(handled.isEmpty());
+    }
+}
@@ -0,0 +1,49 @@
+package com.hmdp.script;
+
+import com.hmdp.utils.SeckillKeys;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * admission_rate.lua 按剩余库存（含各节点租约中的库存）计算速率，有限流配置时以配置为准，不低于最低速率
+ */
+class AdmissionRateScriptTest extends EmbeddedRedisSupport {
+
+    private static final DefaultRedisScript<Long> RATE_SCRIPT = script("admission_rate.lua");
+
+    private static final Long VOUCHER_ID = 1L;
+    private static final List<String> KEYS = Arrays.asList(
+            SeckillKeys.limitKey(VOUCHER_ID), SeckillKeys.stockKey(VOUCHER_ID), SeckillKeys.leaseKey(VOUCHER_ID));
+
+    private static Long rate() {
+        return stringRedisTemplate.execute(RATE_SCRIPT, KEYS, "5", "10");
+    }
+
+    @Test
+    void rateFollowsStockAndLeases() {
+        stringRedisTemplate.opsForValue().set(SeckillKeys.stockKey(VOUCHER_ID), "100");
+        stringRedisTemplate.opsForHash().put(SeckillKeys.leaseKey(VOUCHER_ID), "node-1", "20");
+        stringRedisTemplate.opsForHash().put(SeckillKeys.leaseKey(VOUCHER_ID), "node-1:expire", "9999999999999");
+        stringRedisTemplate.opsForHash().put(SeckillKeys.leaseKey(VOUCHER_ID), "node-2", "-3");
+
+        assertEquals(600L, rate());
+    }
+
+    @Test
+    void configuredRateWins() {
+        stringRedisTemplate.opsForValue().set(SeckillKeys.stockKey(VOUCHER_ID), "100");
+        stringRedisTemplate.opsForHash().put(SeckillKeys.limitKey(VOUCHER_ID), "rate", "42");
+
+        assertEquals(42L, rate());
+    }
+
+    @Test
+    void missingStockFallsBackToMinRate() {
+        assertEquals(10L, rate());
+    }
+}
@@ -0,0 +1,57 @@
+package com.hmdp.script;
+
+import com.hmdp.utils.SeckillKeys;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * compensate.lua 只补偿一次：移出已下单用户、归还库存并删除还没有落库的订单
+ */
+class CompensateScriptTest extends EmbeddedRedisSupport {
+
+    private static final DefaultRedisScript<Long> COMPENSATE_SCRIPT = script("compensate.lua");
+
+    private static final Long VOUCHER_ID = 1L;
+    private static final List<String> KEYS = Arrays.asList(
+            SeckillKeys.stockKey(VOUCHER_ID),
+            SeckillKeys.buyersKey(VOUCHER_ID),
+            SeckillKeys.buyerCountKey(VOUCHER_ID),
+            SeckillKeys.pendingKey(VOUCHER_ID));
+
+    private static long compensate(long userId) {
+        return stringRedisTemplate.execute(COMPENSATE_SCRIPT, KEYS, String.valueOf(userId));
+    }
+
+    @Test
+    void compensateOnlyOnce() {
+        stringRedisTemplate.opsForValue().set(SeckillKeys.stockKey(VOUCHER_ID), "0");
+        stringRedisTemplate.opsForValue().setBit(SeckillKeys.buyersKey(VOUCHER_ID), 7, true);
+        stringRedisTemplate.opsForValue().set(SeckillKeys.buyerCountKey(VOUCHER_ID), "1");
+        stringRedisTemplate.opsForHash().put(SeckillKeys.pendingKey(VOUCHER_ID), "7", "1760745600:1");
+
+        assertEquals(1, compensate(7));
+        assertEquals("1", stringRedisTemplate.opsForValue().get(SeckillKeys.stockKey(VOUCHER_ID)));
+        assertEquals("0", stringRedisTemplate.opsForValue().get(SeckillKeys.buyerCountKey(VOUCHER_ID)));
+        assertFalse(stringRedisTemplate.opsForValue().getBit(SeckillKeys.buyersKey(VOUCHER_ID), 7));
+        assertFalse(stringRedisTemplate.opsForHash().hasKey(SeckillKeys.pendingKey(VOUCHER_ID), "7"));
+
+        // 重复的死信
+        assertEquals(0, compensate(7));
+        assertEquals("1", stringRedisTemplate.opsForValue().get(SeckillKeys.stockKey(VOUCHER_ID)));
+        assertEquals("0", stringRedisTemplate.opsForValue().get(SeckillKeys.buyerCountKey(VOUCHER_ID)));
+    }
+
+    @Test
+    void userWithoutOrderIsNotCompensated() {
+        stringRedisTemplate.opsForValue().set(SeckillKeys.stockKey(VOUCHER_ID), "3");
+
+        assertEquals(0, compensate(7));
+        assertEquals("3", stringRedisTemplate.opsForValue().get(SeckillKeys.stockKey(VOUCHER_ID)));
+        assertNull(stringRedisTemplate.opsForValue().get(SeckillKeys.buyerCountKey(VOUCHER_ID)));
+    }
+}
@@ -0,0 +1,50 @@
+package com.hmdp.script;
+
+import com.hmdp.utils.SeckillKeys;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * gcra.lua 放行突发数以内的请求，超出后拒绝；限流配置 hash 覆盖参数中的默认值
+ */
+class GcraScriptTest extends EmbeddedRedisSupport {
+
+    private static final DefaultRedisScript<Long> GCRA_SCRIPT = script("gcra.lua");
+
+    private static final Long VOUCHER_ID = 1L;
+    private static final List<String> KEYS = Arrays.asList(SeckillKeys.gcraKey(VOUCHER_ID), SeckillKeys.limitKey(VOUCHER_ID));
+
+    private static int admitted(int requests, String rate, String burst) {
+        int admitted = 0;
+        for (int i = 0; i < requests; i++) {
+            admitted += stringRedisTemplate.execute(GCRA_SCRIPT, KEYS, rate, burst);
+        }
+        return admitted;
+    }
+
+    @Test
+    void burstIsAdmittedThenRejected() {
+        // 每秒放行 1 个，20 次请求在 1 秒内完成，只有突发数以内的请求被放行
+        assertEquals(5, admitted(20, "1", "5"));
+        assertTrue(stringRedisTemplate.getExpire(SeckillKeys.gcraKey(VOUCHER_ID)) > 0);
+    }
+
+    @Test
+    void limitHashOverridesDefaults() {
+        stringRedisTemplate.opsForHash().put(SeckillKeys.limitKey(VOUCHER_ID), "rate", "1");
+        stringRedisTemplate.opsForHash().put(SeckillKeys.limitKey(VOUCHER_ID), "burst", "3");
+
+        assertEquals(3, admitted(20, "1000", "1000"));
+    }
+
+    @Test
+    void noRateMeansNoLimit() {
+        assertEquals(20, admitted(20, "0", "0"));
+        assertFalse(stringRedisTemplate.hasKey(SeckillKeys.gcraKey(VOUCHER_ID)));
+    }
+}
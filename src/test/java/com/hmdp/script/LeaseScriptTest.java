@@ -0,0 +1,102 @@
+package com.hmdp.script;
+
+import com.hmdp.utils.SeckillKeys;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * lease.lua 的预留、归还和回收，Redis 中的库存加上各节点的租约库存始终不变
+ */
+class LeaseScriptTest extends EmbeddedRedisSupport {
+
+    private static final DefaultRedisScript<Long> LEASE_SCRIPT = script("lease.lua");
+
+    private static final Long VOUCHER_ID = 1L;
+    private static final List<String> KEYS = Arrays.asList(SeckillKeys.stockKey(VOUCHER_ID), SeckillKeys.leaseKey(VOUCHER_ID));
+
+    private static long lease(String op, String node, long n, long millis) {
+        return stringRedisTemplate.execute(LEASE_SCRIPT, KEYS, op, node, String.valueOf(n), String.valueOf(millis));
+    }
+
+    private static void setStock(int stock) {
+        stringRedisTemplate.opsForValue().set(SeckillKeys.stockKey(VOUCHER_ID), String.valueOf(stock));
+    }
+
+    private static String stock() {
+        return stringRedisTemplate.opsForValue().get(SeckillKeys.stockKey(VOUCHER_ID));
+    }
+
+    private static Object leased(String node) {
+        return stringRedisTemplate.opsForHash().get(SeckillKeys.leaseKey(VOUCHER_ID), node);
+    }
+
+    @Test
+    void acquireTakesAtMostTheRemainingStock() {
+        setStock(15);
+
+        assertEquals(10, lease("acquire", "node-1", 10, 60000));
+        assertEquals(5, lease("acquire", "node-2", 10, 60000));
+        assertEquals(0, lease("acquire", "node-3", 10, 60000));
+
+        assertEquals("0", stock());
+        assertEquals("10", leased("node-1"));
+        assertEquals("5", leased("node-2"));
+        assertNull(leased("node-3"));
+        assertNotNull(leased("node-1:expire"));
+    }
+
+    @Test
+    void acquireOnMissingStockKeyReturnsZero() {
+        assertEquals(0, lease("acquire", "node-1", 10, 60000));
+        assertFalse(stringRedisTemplate.hasKey(SeckillKeys.leaseKey(VOUCHER_ID)));
+    }
+
+    @Test
+    void releaseReturnsAtMostWhatIsLeased() {
+        setStock(10);
+        lease("acquire", "node-1", 10, 60000);
+
+        assertEquals(4, lease("release", "node-1", 4, 0));
+        assertEquals("4", stock());
+        assertEquals("6", leased("node-1"));
+
+        // 多还的部分被忽略，归还完之后删除租约记录
+        assertEquals(6, lease("release", "node-1", 100, 0));
+        assertEquals("10", stock());
+        assertNull(leased("node-1"));
+        assertNull(leased("node-1:expire"));
+
+        // 重复归还
+        assertEquals(0, lease("release", "node-1", 10, 0));
+        assertEquals("10", stock());
+    }
+
+    @Test
+    void reclaimOnlyAfterExpiryAndGracePeriod() {
+        setStock(10);
+        lease("acquire", "node-1", 6, 60000);
+
+        // 租约还没有到期
+        assertEquals(0, lease("reclaim", "node-1", 0, 0));
+        assertEquals("6", leased("node-1"));
+
+        // 租约已经到期，但还在宽限时间内
+        lease("acquire", "node-2", 4, -1000);
+        assertEquals(0, lease("reclaim", "node-2", 0, 60000));
+        assertEquals("4", leased("node-2"));
+
+        assertEquals(4, lease("reclaim", "node-2", 0, 0));
+        assertEquals("4", stock());
+        assertNull(leased("node-2"));
+        assertNull(leased("node-2:expire"));
+
+        // 回收之后节点再归还不会多还
+        assertEquals(0, lease("release", "node-2", 4, 0));
+        assertEquals("4", stock());
+    }
+}
@@ -0,0 +1,46 @@
+package com.hmdp.script;
+
+import com.hmdp.utils.SeckillKeys;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * migrate_buyers.lua 可以重复执行，已经在 bitmap 中的用户不会重复计数
+ */
+class MigrateBuyersScriptTest extends EmbeddedRedisSupport {
+
+    private static final DefaultRedisScript<Long> MIGRATE_SCRIPT = script("migrate_buyers.lua");
+
+    private static final Long VOUCHER_ID = 1L;
+    private static final List<String> KEYS = Arrays.asList(SeckillKeys.buyersKey(VOUCHER_ID), SeckillKeys.buyerCountKey(VOUCHER_ID));
+
+    private static long migrate(String... userIds) {
+        return stringRedisTemplate.execute(MIGRATE_SCRIPT, KEYS, (Object[]) userIds);
+    }
+
+    @Test
+    void migrateIsIdempotent() {
+        // 迁移期间用户 2 又通过新版本下了单
+        stringRedisTemplate.opsForValue().setBit(SeckillKeys.buyersKey(VOUCHER_ID), 2, true);
+        stringRedisTemplate.opsForValue().set(SeckillKeys.buyerCountKey(VOUCHER_ID), "1");
+
+        assertEquals(2, migrate("1", "2", "3"));
+        assertEquals(0, migrate("1", "2", "3"));
+
+        assertEquals("3", stringRedisTemplate.opsForValue().get(SeckillKeys.buyerCountKey(VOUCHER_ID)));
+        for (long userId = 1; userId <= 3; userId++) {
+            assertTrue(stringRedisTemplate.opsForValue().getBit(SeckillKeys.buyersKey(VOUCHER_ID), userId));
+        }
+    }
+
+    @Test
+    void emptyBatchDoesNotCreateTheCount() {
+        assertEquals(0, migrate());
+        assertNull(stringRedisTemplate.opsForValue().get(SeckillKeys.buyerCountKey(VOUCHER_ID)));
+    }
+}
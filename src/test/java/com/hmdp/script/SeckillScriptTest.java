@@ -0,0 +1,177 @@
+package com.hmdp.script;
+
+import com.hmdp.utils.SeckillKeys;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * seckill.lua 的各个返回值，以及下单成功后库存、已下单用户、序列号、还没有落库的订单和订单 Stream 的变化
+ */
+class SeckillScriptTest extends EmbeddedRedisSupport {
+
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT = script("seckill.lua");
+
+    private static final Long VOUCHER_ID = 1L;
+    private static final String SEQUENCE_KEY = "icr:order:2026:10:18";
+    private static final String STREAM_KEY = "stream.orders";
+    private static final long TIMESTAMP = 1760745600L;
+
+    private static long seckill(long userId, String... optionalKeys) {
+        return execute(userId, null, optionalKeys);
+    }
+
+    private static long seckillOnNode(long userId, String node) {
+        return execute(userId, node);
+    }
+
+    private static long execute(long userId, String node, String... optionalKeys) {
+        List<String> keys = new ArrayList<>(Arrays.asList(
+                SeckillKeys.stockKey(VOUCHER_ID),
+                SeckillKeys.buyersKey(VOUCHER_ID),
+                SeckillKeys.windowKey(VOUCHER_ID),
+                SeckillKeys.leaseKey(VOUCHER_ID),
+                SeckillKeys.buyerCountKey(VOUCHER_ID),
+                SeckillKeys.pendingKey(VOUCHER_ID)));
+        keys.addAll(Arrays.asList(optionalKeys));
+        List<String> args = new ArrayList<>(Arrays.asList(String.valueOf(userId), VOUCHER_ID.toString(), String.valueOf(TIMESTAMP)));
+        if (node != null) {
+            args.add(node);
+        }
+        Long result = stringRedisTemplate.execute(SECKILL_SCRIPT, keys, (Object[]) args.toArray(new String[0]));
+        assertNotNull(result);
+        return result;
+    }
+
+    private static void setStock(int stock) {
+        stringRedisTemplate.opsForValue().set(SeckillKeys.stockKey(VOUCHER_ID), String.valueOf(stock));
+    }
+
+    private static String get(String key) {
+        return stringRedisTemplate.opsForValue().get(key);
+    }
+
+    private static boolean bought(long userId) {
+        return Boolean.TRUE.equals(stringRedisTemplate.opsForValue().getBit(SeckillKeys.buyersKey(VOUCHER_ID), userId));
+    }
+
+    @Test
+    void successWithoutSequenceKeyReturnsZero() {
+        setStock(2);
+
+        assertEquals(0, seckill(7));
+        assertEquals("1", get(SeckillKeys.stockKey(VOUCHER_ID)));
+        assertTrue(bought(7));
+        assertEquals("1", get(SeckillKeys.buyerCountKey(VOUCHER_ID)));
+        // 没有序列号时由调用方写入还没有落库的订单
+        assertFalse(stringRedisTemplate.hasKey(SeckillKeys.pendingKey(VOUCHER_ID)));
+    }
+
+    @Test
+    void duplicateOrderIsRejected() {
+        setStock(2);
+        seckill(7);
+
+        assertEquals(-2, seckill(7));
+        assertEquals("1", get(SeckillKeys.stockKey(VOUCHER_ID)));
+        assertEquals("1", get(SeckillKeys.buyerCountKey(VOUCHER_ID)));
+    }
+
+    @Test
+    void outOfStock() {
+        setStock(1);
+        seckill(7);
+
+        assertEquals(-1, seckill(8));
+        assertEquals("0", get(SeckillKeys.stockKey(VOUCHER_ID)));
+        assertFalse(bought(8));
+    }
+
+    @Test
+    void missingStockKeyMeansOutOfStock() {
+        assertEquals(-1, seckill(7));
+        assertFalse(bought(7));
+    }
+
+    @Test
+    void outsideTimeWindow() {
+        setStock(1);
+        long now = System.currentTimeMillis() / 1000;
+
+        stringRedisTemplate.opsForValue().set(SeckillKeys.windowKey(VOUCHER_ID), (now + 3600) + ":" + (now + 7200));
+        assertEquals(-3, seckill(7));
+
+        stringRedisTemplate.opsForValue().set(SeckillKeys.windowKey(VOUCHER_ID), (now - 7200) + ":" + (now - 3600));
+        assertEquals(-4, seckill(7));
+
+        stringRedisTemplate.opsForValue().set(SeckillKeys.windowKey(VOUCHER_ID), (now - 3600) + ":" + (now + 3600));
+        assertEquals(0, seckill(7));
+        assertEquals("0", get(SeckillKeys.stockKey(VOUCHER_ID)));
+    }
+
+    @Test
+    void sequenceIsAllocatedOnlyOnSuccessAndRecordedAsPending() {
+        setStock(2);
+
+        assertEquals(1, seckill(7, SEQUENCE_KEY));
+        assertEquals(-2, seckill(7, SEQUENCE_KEY));
+        assertEquals(2, seckill(8, SEQUENCE_KEY));
+        assertEquals(-1, seckill(9, SEQUENCE_KEY));
+
+        assertEquals("2", get(SEQUENCE_KEY));
+        Map<Object, Object> pending = stringRedisTemplate.opsForHash().entries(SeckillKeys.pendingKey(VOUCHER_ID));
+        assertEquals(2, pending.size());
+        assertEquals(TIMESTAMP + ":1", pending.get("7"));
+        assertEquals(TIMESTAMP + ":2", pending.get("8"));
+    }
+
+    @Test
+    void orderIsAddedToStream() {
+        setStock(1);
+
+        assertEquals(1, seckill(7, SEQUENCE_KEY, STREAM_KEY));
+        assertEquals(-1, seckill(8, SEQUENCE_KEY, STREAM_KEY));
+
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().range(STREAM_KEY, Range.unbounded());
+        assertNotNull(records);
+        assertEquals(1, records.size());
+        Map<Object, Object> order = records.get(0).getValue();
+        assertEquals("7", order.get("userId"));
+        assertEquals(VOUCHER_ID.toString(), order.get("voucherId"));
+        assertEquals(String.valueOf(TIMESTAMP), order.get("timestamp"));
+        assertEquals("1", order.get("seq"));
+    }
+
+    @Test
+    void leaseModeDeductsTheNodeLeaseInsteadOfStock() {
+        setStock(0);
+        stringRedisTemplate.opsForHash().put(SeckillKeys.leaseKey(VOUCHER_ID), "node-1", "1");
+
+        assertEquals(0, seckillOnNode(7, "node-1"));
+        assertEquals("0", stringRedisTemplate.opsForHash().get(SeckillKeys.leaseKey(VOUCHER_ID), "node-1"));
+        assertEquals("0", get(SeckillKeys.stockKey(VOUCHER_ID)));
+        assertTrue(bought(7));
+
+        // 租约已经用完（或被回收）
+        assertEquals(-5, seckillOnNode(8, "node-1"));
+        assertEquals(-5, seckillOnNode(8, "node-2"));
+        assertFalse(bought(8));
+    }
+
+    @Test
+    void duplicateOrderInLeaseModeKeepsTheLease() {
+        stringRedisTemplate.opsForHash().put(SeckillKeys.leaseKey(VOUCHER_ID), "node-1", "2");
+        seckillOnNode(7, "node-1");
+
+        assertEquals(-2, seckillOnNode(7, "node-1"));
+        assertEquals("1", stringRedisTemplate.opsForHash().get(SeckillKeys.leaseKey(VOUCHER_ID), "node-1"));
+    }
+}
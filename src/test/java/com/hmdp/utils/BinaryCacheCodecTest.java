@@ -0,0 +1,83 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 二进制编解码器的往返编解码、压缩、逻辑过期格式，以及旧 JSON 数据的兼容
+ */
+class BinaryCacheCodecTest {
+
+    private final BinaryCacheCodec codec = new BinaryCacheCodec(1024);
+
+    private static Shop shop() {
+        Shop shop = new Shop();
+        shop.setId(1L);
+        shop.setName("103茶餐厅");
+        shop.setTypeId(1L);
+        shop.setX(120.149192);
+        shop.setY(30.316078);
+        shop.setAvgPrice(80L);
+        shop.setScore(37);
+        shop.setCreateTime(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+        return shop;
+    }
+
+    @Test
+    void roundTrip() {
+        Shop shop = shop();
+
+        byte[] bytes = codec.encode(shop);
+        assertEquals((byte) 0xFE, bytes[0]);
+        assertEquals(shop, codec.decode(bytes, Shop.class));
+    }
+
+    @Test
+    void largeValueIsCompressed() {
+        Shop shop = shop();
+        shop.setImages(StrUtil.repeat("https://qcloud.dpfile.com/pc/image.jpg,", 200));
+
+        byte[] bytes = codec.encode(shop);
+        assertTrue(bytes.length < shop.getImages().length());
+        assertEquals(shop, codec.decode(bytes, Shop.class));
+    }
+
+    @Test
+    void logicalExpireRoundTrip() {
+        RedisData redisData = new RedisData();
+        redisData.setData(shop());
+        redisData.setExpireTime(LocalDateTime.now().plusSeconds(30).truncatedTo(ChronoUnit.MILLIS));
+        redisData.setRebuildCost(25L);
+
+        RedisData decoded = codec.decodeLogical(codec.encodeLogical(redisData), Shop.class);
+        assertEquals(redisData.getExpireTime(), decoded.getExpireTime());
+        assertEquals(25L, decoded.getRebuildCost());
+        assertEquals(redisData.getData(), decoded.getData());
+
+        redisData.setRebuildCost(null);
+        assertNull(codec.decodeLogical(codec.encodeLogical(redisData), Shop.class).getRebuildCost());
+    }
+
+    @Test
+    void legacyJsonIsStillReadable() {
+        Shop shop = new Shop();
+        shop.setId(1L);
+        shop.setName("103茶餐厅");
+        JsonCacheCodec legacyCodec = new JsonCacheCodec();
+
+        assertEquals(shop, codec.decode(legacyCodec.encode(shop), Shop.class));
+
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(LocalDateTime.now().plusSeconds(30).truncatedTo(ChronoUnit.SECONDS));
+        RedisData decoded = codec.decodeLogical(legacyCodec.encodeLogical(redisData), Shop.class);
+        assertEquals(shop, decoded.getData());
+        assertEquals(redisData.getExpireTime(), decoded.getExpireTime());
+    }
+}
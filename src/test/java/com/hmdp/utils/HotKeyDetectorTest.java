@@ -0,0 +1,56 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static com.hmdp.utils.RedisConstants.HOT_KEY_THRESHOLD;
+import static com.hmdp.utils.RedisConstants.HOT_KEY_WINDOW_SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 热点 key 探测：窗口内访问次数超过阈值的 key 成为热点，移出窗口后不再是热点
+ */
+class HotKeyDetectorTest {
+
+    // 不启动定时任务，手动滚动窗口
+    private final HotKeyDetector detector = new HotKeyDetector();
+
+    private void rotate() {
+        ReflectionTestUtils.invokeMethod(detector, "rotate");
+    }
+
+    @Test
+    void frequentKeyBecomesHot() {
+        for (int i = 0; i < HOT_KEY_THRESHOLD * 100; i++) {
+            detector.record("cache:shop:1");
+        }
+        for (int i = 0; i < 10; i++) {
+            detector.record("cache:shop:2");
+        }
+        assertFalse(detector.isHot("cache:shop:1"));
+
+        rotate();
+
+        assertTrue(detector.isHot("cache:shop:1"));
+        assertFalse(detector.isHot("cache:shop:2"));
+        // 按采样率放大后的估算次数
+        long estimated = detector.getHotKeys().get("cache:shop:1");
+        assertTrue(estimated > HOT_KEY_THRESHOLD * 50 && estimated < HOT_KEY_THRESHOLD * 200);
+    }
+
+    @Test
+    void keyCoolsDownAfterLeavingTheWindow() {
+        for (int i = 0; i < HOT_KEY_THRESHOLD * 100; i++) {
+            detector.record("cache:shop:1");
+        }
+        rotate();
+        assertTrue(detector.isHot("cache:shop:1"));
+
+        // 滚动一整个窗口后，记录访问的桶已经被清空
+        for (int i = 0; i < HOT_KEY_WINDOW_SECONDS; i++) {
+            rotate();
+        }
+        assertFalse(detector.isHot("cache:shop:1"));
+        assertTrue(detector.getHotKeys().isEmpty());
+    }
+}
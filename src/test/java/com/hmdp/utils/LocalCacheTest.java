@@ -0,0 +1,64 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 近端缓存的过期和容量上限（LRU 淘汰）
+ */
+class LocalCacheTest {
+
+    @Test
+    void entryExpires() throws InterruptedException {
+        LocalCache cache = new LocalCache(10);
+        cache.put("shop:1", "a", 50);
+        cache.put("shop:2", "b", 60000);
+
+        assertEquals("a", cache.get("shop:1"));
+        Thread.sleep(100);
+        assertNull(cache.get("shop:1"));
+        assertEquals("b", cache.get("shop:2"));
+        // 过期的条目在读取时删除
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void sizeIsBounded() {
+        LocalCache cache = new LocalCache(100);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("shop:" + i, i, 60000);
+            assertTrue(cache.size() <= 100);
+        }
+        assertEquals(100, cache.size());
+        // 最近写入的条目不会被淘汰
+        assertEquals(999, cache.get("shop:999"));
+        assertNull(cache.get("shop:0"));
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvicted() {
+        LocalCache cache = new LocalCache(2);
+        cache.put("shop:1", "a", 60000);
+        cache.put("shop:2", "b", 60000);
+        // 访问过的条目移到最后
+        cache.get("shop:1");
+
+        cache.put("shop:3", "c", 60000);
+        assertEquals(2, cache.size());
+        assertEquals("a", cache.get("shop:1"));
+        assertNull(cache.get("shop:2"));
+        assertEquals("c", cache.get("shop:3"));
+    }
+
+    @Test
+    void nullValueAndNonPositiveTtlAreIgnored() {
+        LocalCache cache = new LocalCache(10);
+        cache.put("shop:1", null, 60000);
+        cache.put("shop:2", "b", 0);
+        cache.put("shop:3", "c", -1);
+
+        assertEquals(0, cache.size());
+        assertNull(cache.get("shop:2"));
+    }
+}
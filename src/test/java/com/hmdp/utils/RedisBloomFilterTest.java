@@ -0,0 +1,87 @@
+package com.hmdp.utils;
+
+import com.hmdp.script.EmbeddedRedisSupport;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 布隆过滤器：添加过的元素一定判定为存在，重建时与 Redis 中已有的位图合并，误判率在期望范围附近
+ */
+class RedisBloomFilterTest extends EmbeddedRedisSupport {
+
+    private static final String KEY = "bloom:shop";
+
+    private static RedisBloomFilter bloomFilter() {
+        return new RedisBloomFilter(KEY, 10000, 0.01, stringRedisTemplate);
+    }
+
+    @Test
+    void addedValuesMightBeContained() {
+        RedisBloomFilter filter = bloomFilter();
+        for (long id = 1; id <= 1000; id++) {
+            filter.add(id);
+        }
+
+        for (long id = 1; id <= 1000; id++) {
+            assertTrue(filter.mightContain(id));
+        }
+        int falsePositives = 0;
+        for (long id = 100001; id <= 110000; id++) {
+            if (filter.mightContain(id)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 100, "误判次数: " + falsePositives);
+    }
+
+    @Test
+    void rebuildMergesWithRedisBitmap() {
+        // 另一个节点刚刚添加了元素
+        bloomFilter().add(20001L);
+
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            ids.add(id);
+        }
+        RedisBloomFilter filter = bloomFilter();
+        filter.rebuild(ids);
+
+        assertTrue(filter.mightContain(1L));
+        assertTrue(filter.mightContain(1000L));
+        assertTrue(filter.mightContain(20001L));
+
+        // 新启动的节点从 Redis 加载到的是合并后的位图
+        RedisBloomFilter other = bloomFilter();
+        other.rebuild(new ArrayList<>());
+        assertTrue(other.mightContain(500L));
+        assertTrue(other.mightContain(20001L));
+    }
+
+    @Test
+    void rebuildInBatches() {
+        Iterator<List<Long>> batches = Arrays.asList(Arrays.asList(1L, 2L), Arrays.asList(3L, 4L)).iterator();
+        RedisBloomFilter filter = bloomFilter();
+        filter.rebuild(() -> batches.hasNext() ? batches.next() : Collections.emptyList());
+
+        for (long id = 1; id <= 4; id++) {
+            assertTrue(filter.mightContain(id));
+        }
+        assertTrue(stringRedisTemplate.hasKey(KEY));
+    }
+
+    @Test
+    void addLocalOnlyUpdatesLocalMirror() {
+        RedisBloomFilter filter = bloomFilter();
+        filter.addLocal(1L);
+
+        assertTrue(filter.mightContain(1L));
+        assertFalse(stringRedisTemplate.hasKey(KEY));
+    }
+}